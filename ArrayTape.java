@@ -0,0 +1,159 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class ArrayTape extends Tape
+{
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Cells are stored in a primitive array that grows in both directions
+    protected byte[] cells;
+    protected int headIndex;
+
+    // Bounds of the defined cells (inclusive)
+    protected int leftIndex;
+    protected int rightIndex;
+
+    ArrayTape()
+    {
+        // The inherited constructor already counted the starting cell
+        cells = new byte[INITIAL_CAPACITY];
+        headIndex = leftIndex = rightIndex = INITIAL_CAPACITY / 2;
+    }
+
+    public void load(ByteBuffer buffer, int cellCount, int headOffset)
+    {
+        // Leave room to grow on both sides of the loaded cells
+        cells = new byte[Math.max(INITIAL_CAPACITY, cellCount * 2)];
+        leftIndex = (cells.length - cellCount) / 2;
+        rightIndex = leftIndex + cellCount - 1;
+        headIndex = leftIndex + headOffset;
+        buffer.get(cells, leftIndex, cellCount);
+
+        // Every loaded cell is defined
+        definedCount = cellCount;
+        symbolZeroCount = 0;
+        for(int i = leftIndex; i <= rightIndex; ++i)
+            if(cells[i] == Symbol.ZERO)
+                ++symbolZeroCount;
+    }
+
+    private void grow()
+    {
+        // Double the capacity, splitting the new space between both ends of the tape
+        int shift = cells.length / 2;
+        byte[] newCells = new byte[cells.length * 2];
+
+        if(defaultSymbol != 0)
+            Arrays.fill(newCells, defaultSymbol);
+
+        System.arraycopy(cells, leftIndex, newCells, leftIndex + shift, rightIndex - leftIndex + 1);
+
+        cells = newCells;
+        headIndex += shift;
+        leftIndex += shift;
+        rightIndex += shift;
+    }
+
+    private void defineCell()
+    {
+        // Matches the statistics of a newly created Tape.Node
+        if(defaultSymbol != Symbol.UNDEFINED)
+            ++definedCount;
+        if(defaultSymbol == Symbol.ZERO)
+            ++symbolZeroCount;
+    }
+
+    @Override
+    public byte writeHead(byte val)
+    {
+        // Calculate stats changes
+        if(val == Symbol.ZERO)
+            ++symbolZeroCount;
+        else if(val == Symbol.UNDEFINED)
+            --definedCount;
+
+        if(cells[headIndex] == Symbol.ZERO)
+            --symbolZeroCount;
+        else if(cells[headIndex] == Symbol.UNDEFINED)
+            ++definedCount;
+
+        // Write to the head
+        cells[headIndex] = val;
+
+        return val;
+    }
+
+    @Override
+    public byte readHead()
+    {
+        return cells[headIndex];
+    }
+
+    @Override
+    public byte moveLeft()
+    {
+        // If the cell hasn't been visited, define it
+        if(headIndex == leftIndex)
+        {
+            if(leftIndex == 0)
+                grow();
+
+            --leftIndex;
+            defineCell();
+        }
+
+        return cells[--headIndex];
+    }
+
+    @Override
+    public byte moveRight()
+    {
+        // If the cell hasn't been visited, define it
+        if(headIndex == rightIndex)
+        {
+            if(rightIndex == cells.length - 1)
+                grow();
+
+            ++rightIndex;
+            defineCell();
+        }
+
+        return cells[++headIndex];
+    }
+
+    @Override
+    public byte peekLeft()
+    {
+        if(headIndex == leftIndex)
+            return defaultSymbol;
+
+        return cells[headIndex - 1];
+    }
+
+    @Override
+    public byte peekRight()
+    {
+        if(headIndex == rightIndex)
+            return defaultSymbol;
+
+        return cells[headIndex + 1];
+    }
+
+    @Override
+    public int cellCount()
+    {
+        return rightIndex - leftIndex + 1;
+    }
+
+    @Override
+    public int headCell()
+    {
+        return headIndex - leftIndex;
+    }
+
+    @Override
+    public byte cellAt(int index)
+    {
+        return cells[leftIndex + index];
+    }
+}
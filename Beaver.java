@@ -1,9 +1,20 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.math.BigInteger;
 import java.time.Duration;
 import java.time.Instant;
 
 public class Beaver
 {
+    // Tape implementations that can be used by run()
+    public enum Engine { NODE, ARRAY, BITS, CHAIN, MACRO, COMPILED, CYCLER, TRANSLATED }
+
+    // Results of a single run
+    public record RunResult(boolean halted, boolean runsForever, StepCounter steps, long sigma, long definedCount, Duration time) { }
+
     public static boolean logging = true;
 
     // Beaver internals
@@ -11,9 +22,36 @@ public class Beaver
     public byte symbolCount;
     public State[] states;
 
+    // Flat table of packed transitions, indexed by `state * symbolCount + symbol`
+    public int[] transitions;
+
     // Editable start state for alternate runs
     public int startState = State.charToState('A');
 
+    // Editable tape implementation for alternate runs
+    public Engine engine;
+
+    // Settings for the macro engine
+    public int macroSize = 4;
+    public int macroCacheSize = 1 << 20;
+
+    // Settings for checkpoints, which are written when a file is set and the engine is array
+    public String checkpointFile = null;
+    public Duration checkpointInterval = Duration.ofMinutes(5);
+    private static final long CHECKPOINT_CHUNK = 1L << 26;
+
+    // Optional tracer, which only the tape engines can feed
+    public Tracer tracer = null;
+
+    // Settings for the translated cycler engine
+    public int translatedRecords = 64;
+    public int translatedWindow = 256;
+
+    // Results of the cycler engines, or -1 when no cycle was found
+    public long cycleStart = -1;
+    public long cyclePeriod = -1;
+    public long cycleShift = 0;
+
     Beaver(String beaver)
     {
         beaverString = beaver;
@@ -23,12 +61,27 @@ public class Beaver
 
         // Split the string into its states and identify the number of symbols being used
         String[] stateList = beaver.split("_");
+        if(stateList.length == 0 || stateList[0].isEmpty() || stateList[0].length() % 3 != 0)
+            throw new IllegalArgumentException("Invalid beaver " + beaverString + ". Each state needs 3 characters (eg. 1RB) for every symbol.");
+
         symbolCount = (byte)(stateList[0].length()/3);
 
         // Initialize the state array
         states = new State[stateList.length];
         for(int i = 0; i < states.length; ++i)
             states[i] = new State(i, stateList[i], symbolCount);
+
+        // Targets past the last state would index outside the transition table when run
+        for(State state : states)
+            for(int transitionState : state.targetState)
+                if(transitionState >= states.length)
+                    throw new IllegalArgumentException("State " + State.stateToChar(state.state) + " moves to state " + State.stateToChar(transitionState) + " but the beaver only has " + states.length + " states.");
+
+        // Compile the states into the flat transition table
+        transitions = new int[states.length * symbolCount];
+        for(State state : states)
+            for(int symbol = 0; symbol < symbolCount; ++symbol)
+                transitions[state.state * symbolCount + symbol] = State.pack(state.symbol[symbol], state.dir[symbol], state.targetState[symbol]);
         
         // If no state identified a halting transition in the state constructor, this is not a valid beaver
         boolean beaverHalts = false;
@@ -41,30 +94,243 @@ public class Beaver
         if(!beaverHalts)
             throw new IllegalArgumentException("No halting transition found. Valid characters for halt state are '-' and 'Z'.");
 
+        // Two symbol machines can pack their tape into bits
+        engine = symbolCount == 2 ? Engine.BITS : Engine.NODE;
+
         if(logging)
             System.out.println("Built size " + states.length + " beaver " + beaver);
     }
 
-    public void run(BigInteger maxStepCount)
+    public Tape newTape()
+    {
+        switch(engine)
+        {
+            case ARRAY:
+                return new ArrayTape();
+            case BITS:
+                if(symbolCount != 2)
+                    throw new IllegalArgumentException("The bits engine only supports 2 symbol beavers.");
+                return new BitTape();
+            default:
+                return new Tape();
+        }
+    }
+
+    public static long stepLimit(BigInteger maxStepCount)
+    {
+        // A max step count of 0 runs until halted
+        if(maxStepCount.equals(BigInteger.ZERO))
+            return Long.MAX_VALUE;
+
+        return StepCounter.toLongBound(maxStepCount);
+    }
+
+    public static boolean canTrace(Engine engine)
+    {
+        // Only the engines that run one step at a time on a Tape record steps
+        return engine == Engine.NODE || engine == Engine.ARRAY || engine == Engine.BITS;
+    }
+
+    public static Engine parseEngine(String name)
+    {
+        // The macro engine accepts its block size as a suffix (eg. macro6)
+        String engineName = name.toUpperCase();
+        if(engineName.startsWith("MACRO") && engineName.length() > 5)
+        {
+            if(!Utility.isInt(engineName.substring(5)))
+                throw new IllegalArgumentException("Invalid macro block size in engine " + name);
+
+            engineName = "MACRO";
+        }
+
+        try
+        {
+            return Engine.valueOf(engineName);
+        }
+        catch(IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Unknown engine " + name);
+        }
+    }
+
+    public void setEngine(String name)
+    {
+        engine = parseEngine(name);
+
+        if(engine == Engine.MACRO && name.length() > 5)
+            macroSize = Integer.parseInt(name.substring(5));
+    }
+
+    public RunResult run(BigInteger maxStepCount)
+    {
+        // Checkpoints need the cells in a single array, so no other engine can write them
+        if(checkpointFile != null && engine != Engine.ARRAY)
+            throw new IllegalArgumentException("Checkpoints are only written by the array engine, not the " + engine.name().toLowerCase() + " engine.");
+
+        if(tracer != null && !canTrace(engine))
+            throw new IllegalArgumentException("The " + engine.name().toLowerCase() + " engine cannot be traced. Use the node, array, or bits engine.");
+
+        if(engine == Engine.CHAIN)
+            return runChain(maxStepCount);
+        else if(engine == Engine.MACRO)
+            return runMacro(maxStepCount);
+        else if(engine == Engine.COMPILED)
+            return runCompiled(maxStepCount);
+        else if(engine == Engine.CYCLER)
+            return runCycler(maxStepCount);
+        else if(engine == Engine.TRANSLATED)
+            return runTranslated(maxStepCount);
+
+        return runTape(newTape(), startState, 0, maxStepCount);
+    }
+
+    public static RunResult resume(String fileName, BigInteger maxStepCount) throws IOException
+    {
+        // Continue a run from its last checkpoint, and keep checkpointing to the same file
+        Checkpoint.Contents checkpoint = Checkpoint.load(fileName);
+        Beaver b = new Beaver(checkpoint.beaver());
+        b.engine = Engine.ARRAY;
+        b.checkpointFile = fileName;
+
+        if(logging)
+            System.out.println("Resuming from step " + checkpoint.steps() + " in state " + State.stateToChar(checkpoint.state()));
+
+        return b.runTape(checkpoint.tape(), checkpoint.state(), checkpoint.steps(), maxStepCount);
+    }
+
+    private void saveCheckpoint(int currState, long stepCount, Tape tape)
+    {
+        try
+        {
+            Checkpoint.save(checkpointFile, beaverString, currState, stepCount, (ArrayTape)tape);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException("Failed to write checkpoint " + checkpointFile, e);
+        }
+    }
+
+    private RunResult runTape(Tape tape, int currState, long stepCount, BigInteger maxStepCount)
     {
         Instant start = Instant.now();
+        Instant lastCheckpoint = start;
+        long maxSteps = stepLimit(maxStepCount);
 
-        // Initialize tape
+        // The clock is only checked between chunks of steps, so checkpoints cost nothing inside the loop
+        boolean checkpoints = checkpointFile != null && tape instanceof ArrayTape;
+        long chunkSize = checkpoints ? CHECKPOINT_CHUNK : Long.MAX_VALUE;
+
+        // Traced runs track the head position relative to where the run started
+        long position = 0;
+        long nextTrace = stepCount;
+
+        while(currState != State.HALTED && stepCount < maxSteps)
+        {
+            long chunkEnd = stepCount + Math.min(chunkSize, maxSteps - stepCount);
+
+            if(tracer == null)
+            {
+                // Run machine until halted or over the user-defined step count
+                while(currState != State.HALTED && stepCount < chunkEnd)
+                {
+                    // Read tape
+                    byte currSymbol = tape.readHead();
+                    ++stepCount;
+
+                    // Execute Transition
+                    int transition = transitions[currState * symbolCount + currSymbol];
+                    tape.writeHead(State.packedSymbol(transition));
+                    tape.move(State.packedDir(transition));
+                    currState = State.packedTarget(transition);
+                }
+            }
+            else
+            {
+                // Same loop, recording the configuration before every sampled step
+                while(currState != State.HALTED && stepCount < chunkEnd)
+                {
+                    // Read tape
+                    byte currSymbol = tape.readHead();
+                    if(stepCount == nextTrace)
+                    {
+                        tracer.record(stepCount, position, currState, currSymbol);
+                        nextTrace += tracer.sampleInterval;
+                    }
+                    ++stepCount;
+
+                    // Execute Transition
+                    int transition = transitions[currState * symbolCount + currSymbol];
+                    tape.writeHead(State.packedSymbol(transition));
+                    tape.move(State.packedDir(transition));
+                    position += State.packedDir(transition) == Tape.LEFT ? -1 : 1;
+                    currState = State.packedTarget(transition);
+                }
+            }
+
+            if(checkpoints && currState != State.HALTED && Duration.between(lastCheckpoint, Instant.now()).compareTo(checkpointInterval) >= 0)
+            {
+                saveCheckpoint(currState, stepCount, tape);
+                lastCheckpoint = Instant.now();
+            }
+        }
+
+        // Save the final configuration so the run can be continued with a larger budget
+        if(checkpoints && currState != State.HALTED)
+            saveCheckpoint(currState, stepCount, tape);
+
+        Instant end = Instant.now();
+
+        if(logging)
+        {
+            // Output results
+            System.out.println((currState == State.HALTED ? "Halted: " : "Not halted: ") + stepCount + " steps taken, " + tape.sigma() + " nonzero cells and " + tape.definedCount + " cells on tape.");
+            printTape(tape);
+            System.out.println(Duration.between(start, end));
+        }
+
+        return new RunResult(currState == State.HALTED, false, new StepCounter(stepCount), tape.sigma(), tape.definedCount, Duration.between(start, end));
+    }
+
+    private RunResult runChain(BigInteger maxStepCount)
+    {
+        Instant start = Instant.now();
+
+        // Initialize run-length encoded tape
         int currState = startState;
-        Tape tape = new Tape();
-        BigInteger stepCount = BigInteger.ZERO;
+        BlockTape tape = new BlockTape();
+        StepCounter stepCount = new StepCounter();
+        StepCounter maxSteps = new StepCounter(maxStepCount);
+        boolean unlimited = maxStepCount.equals(BigInteger.ZERO);
+        boolean runsForever = false;
 
         // Run machine until halted or over the user-defined step count
-        while(currState != State.HALTED && (maxStepCount.equals(BigInteger.ZERO) || stepCount.compareTo(maxStepCount) < 0))
+        while(currState != State.HALTED && (unlimited || !stepCount.reached(maxSteps)))
         {
             // Read tape
             byte currSymbol = tape.readHead();
-            stepCount = stepCount.add(BigInteger.ONE);
+            int transition = transitions[currState * symbolCount + currSymbol];
+
+            if(State.packedTarget(transition) == currState)
+            {
+                // A state that moves through a block uniformly crosses the whole block in one step
+                if(currSymbol == Symbol.ZERO && tape.isBlankAhead(State.packedDir(transition)))
+                {
+                    runsForever = true;
+                    break;
+                }
+
+                long maxCells = unlimited ? Long.MAX_VALUE : stepCount.remainingUntil(maxSteps);
+                stepCount.add(tape.chainMove(State.packedSymbol(transition), State.packedDir(transition), maxCells));
+            }
+            else
+            {
+                stepCount.increment();
 
-            // Execute Transition
-            tape.writeHead(states[currState].symbol[currSymbol]);
-            tape.move(states[currState].dir[currSymbol]);
-            currState = states[currState].targetState[currSymbol];
+                // Execute Transition
+                tape.writeHead(State.packedSymbol(transition));
+                tape.move(State.packedDir(transition));
+                currState = State.packedTarget(transition);
+            }
         }
 
         Instant end = Instant.now();
@@ -72,20 +338,241 @@ public class Beaver
         if(logging)
         {
             // Output results
-            System.out.println((currState == State.HALTED ? "Halted: " : "Not halted: ") + stepCount + " steps taken, " + tape.sigma() + " nonzero cells and " + tape.definedCount + " cells on tape.");
+            String result = currState == State.HALTED ? "Halted: " : (runsForever ? "Runs forever in state " + State.stateToChar(currState) + ": " : "Not halted: ");
+            System.out.println(result + stepCount + " steps taken, " + tape.sigma() + " nonzero cells and " + tape.definedCount + " cells on tape.");
+            System.out.println(Duration.between(start, end));
+        }
+
+        return new RunResult(currState == State.HALTED, runsForever, stepCount, tape.sigma(), tape.definedCount, Duration.between(start, end));
+    }
+
+    private RunResult runMacro(BigInteger maxStepCount)
+    {
+        Instant start = Instant.now();
+
+        // Run the machine on blocks of macroSize cells, reusing cached block transitions
+        MacroMachine macro = new MacroMachine(this, macroSize, macroCacheSize);
+        long maxSteps = stepLimit(maxStepCount);
+        macro.run(startState, maxSteps);
+
+        Instant end = Instant.now();
+
+        if(logging)
+        {
+            // Output results
+            String result = macro.halted ? "Halted: " : (macro.runsForever ? "Runs forever inside a block: " : "Not halted: ");
+            System.out.println(result + macro.stepCount + " steps taken, " + macro.sigma() + " nonzero cells and " + macro.definedCount() + " cells on tape.");
+            System.out.println("Block size " + macroSize + ": " + macro.cacheHits + " cache hits, " + macro.cacheMisses + " cache misses and " + macro.cacheEvictions + " evictions.");
+            System.out.println(Duration.between(start, end));
+        }
+
+        return new RunResult(macro.halted, macro.runsForever, new StepCounter(macro.stepCount), macro.sigma(), macro.definedCount(), Duration.between(start, end));
+    }
+
+    private RunResult runCompiled(BigInteger maxStepCount)
+    {
+        // Compilation is not included in the run time
+        CompiledBeaver.Program program = CompiledBeaver.compile(this);
+
+        Instant start = Instant.now();
+
+        ArrayTape tape = new ArrayTape();
+        long maxSteps = stepLimit(maxStepCount);
+        program.run(tape, maxSteps);
+
+        Instant end = Instant.now();
+
+        if(logging)
+        {
+            // Output results
+            System.out.println((program.state == State.HALTED ? "Halted: " : "Not halted: ") + program.steps + " steps taken, " + tape.sigma() + " nonzero cells and " + tape.definedCount + " cells on tape.");
+            printTape(tape);
+            System.out.println(Duration.between(start, end));
+        }
+
+        return new RunResult(program.state == State.HALTED, false, new StepCounter(program.steps), tape.sigma(), tape.definedCount, Duration.between(start, end));
+    }
+
+    private static void printTape(Tape tape)
+    {
+        // The tape is streamed to the console instead of being built as a string
+        try
+        {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+            TapeRenderer.render(tape, out);
+            out.write(System.lineSeparator());
+            out.flush();
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int step(CyclerTape tape, int currState)
+    {
+        int transition = transitions[currState * symbolCount + tape.readHead()];
+        tape.writeHead(State.packedSymbol(transition));
+        tape.move(State.packedDir(transition));
+        return State.packedTarget(transition);
+    }
+
+    private RunResult runCycler(BigInteger maxStepCount)
+    {
+        Instant start = Instant.now();
+
+        // Initialize tape
+        int currState = startState;
+        CyclerTape tape = new CyclerTape();
+        long stepCount = 0;
+        long maxSteps = stepLimit(maxStepCount);
+
+        // Brent's algorithm compares every configuration to a snapshot taken at the last power of two steps
+        CyclerTape.Snapshot snapshot = tape.snapshot(currState, 0);
+        long nextSnapshot = 1;
+        cycleStart = cyclePeriod = -1;
+
+        while(currState != State.HALTED && stepCount < maxSteps)
+        {
+            currState = step(tape, currState);
+            ++stepCount;
+
+            if(tape.matches(snapshot, currState))
+            {
+                cyclePeriod = stepCount - snapshot.steps();
+                break;
+            }
+
+            if(stepCount == nextSnapshot)
+            {
+                snapshot = tape.snapshot(currState, stepCount);
+                nextSnapshot <<= 1;
+            }
+        }
+
+        if(cyclePeriod > 0)
+        {
+            // Replay two copies one period apart until they reach the same configuration
+            CyclerTape leader = new CyclerTape();
+            CyclerTape follower = new CyclerTape();
+            int leaderState = startState;
+            int followerState = startState;
+
+            for(long i = 0; i < cyclePeriod; ++i)
+                leaderState = step(leader, leaderState);
+
+            // The tapes are only copied and compared once the hashes agree
+            cycleStart = 0;
+            while(leaderState != followerState || leader.position != follower.position || leader.hash != follower.hash
+                || !leader.matches(follower.snapshot(followerState, 0), leaderState))
+            {
+                leaderState = step(leader, leaderState);
+                followerState = step(follower, followerState);
+                ++cycleStart;
+            }
+        }
+
+        Instant end = Instant.now();
+
+        if(logging)
+        {
+            // Output results
+            String result = currState == State.HALTED ? "Halted: " : (cyclePeriod > 0 ? "Cycles from step " + cycleStart + " with period " + cyclePeriod + ": " : "Not halted: ");
+            System.out.println(result + stepCount + " steps taken, " + tape.sigma() + " nonzero cells and " + tape.definedCount + " cells on tape.");
+            printTape(tape);
             System.out.println(Duration.between(start, end));
         }
+
+        return new RunResult(currState == State.HALTED, cyclePeriod > 0, new StepCounter(stepCount), tape.sigma(), tape.definedCount, Duration.between(start, end));
     }
 
-    public static void main(String[] args)
+    private RunResult runTranslated(BigInteger maxStepCount)
     {
+        Instant start = Instant.now();
+
+        // Initialize tape
+        int currState = startState;
+        CyclerTape tape = new CyclerTape();
+        long stepCount = 0;
+        long maxSteps = stepLimit(maxStepCount);
+
+        // Records are taken each time the head defines a new cell at either end of the tape
+        TranslatedCycler cycler = new TranslatedCycler(translatedRecords, translatedWindow);
+        long leftmost = 0;
+        long rightmost = 0;
+        boolean runsForever = false;
+
+        while(currState != State.HALTED && stepCount < maxSteps)
+        {
+            currState = step(tape, currState);
+            ++stepCount;
+            cycler.track(tape.position);
+
+            if(tape.position < leftmost)
+            {
+                leftmost = tape.position;
+                runsForever = currState != State.HALTED && cycler.record(tape, currState, stepCount, Tape.LEFT);
+            }
+            else if(tape.position > rightmost)
+            {
+                rightmost = tape.position;
+                runsForever = currState != State.HALTED && cycler.record(tape, currState, stepCount, Tape.RIGHT);
+            }
+
+            if(runsForever)
+                break;
+        }
+
+        cycleStart = cycler.cycleStart;
+        cyclePeriod = cycler.cyclePeriod;
+        cycleShift = cycler.cycleShift;
+
+        Instant end = Instant.now();
+
+        if(logging)
+        {
+            // Output results
+            String result = currState == State.HALTED ? "Halted: " : (runsForever ? "Translated cycle from step " + cycleStart + " with period " + cyclePeriod + " and shift " + cycleShift + ": " : "Not halted: ");
+            System.out.println(result + stepCount + " steps taken, " + tape.sigma() + " nonzero cells and " + tape.definedCount + " cells on tape.");
+            printTape(tape);
+            System.out.println(Duration.between(start, end));
+        }
+
+        return new RunResult(currState == State.HALTED, runsForever, new StepCounter(stepCount), tape.sigma(), tape.definedCount, Duration.between(start, end));
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        // Continue a checkpointed run, which stores its own TM
+        if(args.length > 1 && args[0].equals("--resume"))
+        {
+            resume(args[1], args.length > 2 ? new BigInteger(args[2]) : BigInteger.ZERO);
+            return;
+        }
+
         String beaver = args.length > 0 ? args[0] : "1RB1LB_1LA1RZ";
         Beaver b = new Beaver(beaver);
+
+        if(args.length > 1)
+            b.setEngine(args[1]);
         
         BigInteger maxStepsToRun = BigInteger.ZERO;
         if(args.length > 2)
             maxStepsToRun = new BigInteger(args[2]);
 
+        if(args.length > 3)
+        {
+            // Refuse the run up front rather than running without ever writing a checkpoint
+            if(b.engine != Engine.ARRAY)
+            {
+                System.out.println("Checkpoints are only written by the array engine. Use the following command:");
+                System.out.println("java Beaver <TM> array <Max steps> <Checkpoint file>");
+                return;
+            }
+
+            b.checkpointFile = args[3];
+        }
+
         b.run(maxStepsToRun);
     }
 }
@@ -0,0 +1,323 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongFunction;
+
+public class BeaverBatch
+{
+    public record BatchResult(String beaver, String status, Beaver.RunResult result) { }
+
+    // Machines run by the lockstep engine are grouped into chunks of this size
+    private static final int LOCKSTEP_CHUNK = 1024;
+
+    private static String invalid(IllegalArgumentException e)
+    {
+        // The reason goes in the result column, so it cannot contain the CSV separator
+        return "invalid: " + String.valueOf(e.getMessage()).replace(',', ';');
+    }
+
+    private static BatchResult runBeaver(String beaver, BigInteger maxSteps, String engine)
+    {
+        Beaver b;
+        try
+        {
+            b = new Beaver(beaver);
+        }
+        catch(IllegalArgumentException e)
+        {
+            // Invalid beavers are recorded instead of stopping the batch
+            return new BatchResult(beaver, invalid(e), null);
+        }
+
+        // The engine was checked before the batch started, so any other error fails the batch
+        if(engine != null)
+            b.setEngine(engine);
+
+        Beaver.RunResult result = b.run(maxSteps);
+        return new BatchResult(beaver, result.halted() ? "halted" : (result.runsForever() ? "runs forever" : "not halted"), result);
+    }
+
+    private static List<BatchResult> runLockstep(List<String> beavers, long maxSteps, int window)
+    {
+        Instant start = Instant.now();
+        LockstepBeavers lockstep = new LockstepBeavers(beavers.size(), window);
+        int[] index = new int[beavers.size()];
+        String[] errors = new String[beavers.size()];
+
+        for(int i = 0; i < beavers.size(); ++i)
+        {
+            try
+            {
+                index[i] = lockstep.add(new Beaver(beavers.get(i)));
+            }
+            catch(IllegalArgumentException e)
+            {
+                index[i] = -1;
+                errors[i] = invalid(e);
+            }
+        }
+
+        lockstep.run(maxSteps);
+        Duration time = Duration.between(start, Instant.now());
+
+        // Every machine in the chunk shares the run time of the chunk
+        List<BatchResult> results = new ArrayList<>();
+        for(int i = 0; i < beavers.size(); ++i)
+        {
+            if(index[i] < 0)
+                results.add(new BatchResult(beavers.get(i), errors[i], null));
+            else
+                results.add(lockstepResult(beavers.get(i), lockstep, index[i], time));
+        }
+
+        return results;
+    }
+
+    private static BatchResult lockstepResult(String beaver, LockstepBeavers lockstep, int m, Duration time)
+    {
+        boolean halted = lockstep.status[m] == LockstepBeavers.HALTED;
+        String status = halted ? "halted" : (lockstep.status[m] == LockstepBeavers.OUT_OF_WINDOW ? "left window" : "not halted");
+        Beaver.RunResult result = new Beaver.RunResult(halted, false, new StepCounter(lockstep.steps[m]), lockstep.sigma(m), lockstep.definedCount(m), time);
+        return new BatchResult(beaver, status, result);
+    }
+
+    private static List<BatchResult> runSeedLockstep(SeedDatabase.Cursor cursor, long maxSteps, int window)
+    {
+        // Records are decoded straight into the lockstep arrays, and the TM is only written out with its row
+        Instant start = Instant.now();
+        LockstepBeavers lockstep = new LockstepBeavers(LOCKSTEP_CHUNK, window);
+
+        while(cursor.next())
+            lockstep.add(cursor.transitions, SeedDatabase.SYMBOL_COUNT, 0);
+
+        lockstep.run(maxSteps);
+        Duration time = Duration.between(start, Instant.now());
+
+        List<BatchResult> results = new ArrayList<>();
+        for(int m = 0; m < lockstep.count; ++m)
+            results.add(lockstepResult(null, lockstep, m, time));
+
+        return results;
+    }
+
+    private static List<BatchResult> runSeedChunk(SeedDatabase.Cursor cursor, BigInteger maxSteps, String engine)
+    {
+        // Full runs take far longer than building their beaver, so each record becomes a Beaver as usual
+        List<BatchResult> results = new ArrayList<>();
+        while(cursor.next())
+            results.add(runBeaver(SeedDatabase.beaverString(cursor.transitions), maxSteps, engine));
+
+        return results;
+    }
+
+    private static String toCSV(BatchResult r)
+    {
+        return toCSV(r.beaver.split("[^0-9A-Z_-]")[0], r);
+    }
+
+    private static String toCSV(String tm, BatchResult r)
+    {
+        if(r.result == null)
+            return tm + ", " + r.status + ", , , , ";
+
+        Beaver.RunResult result = r.result;
+        return tm + ", " + r.status + ", " + result.steps() + ", " + result.sigma() + ", " + result.definedCount() + ", " + result.time().toMillis();
+    }
+
+    public static boolean isLockstep(String engine)
+    {
+        return engine != null && engine.toUpperCase().startsWith("LOCKSTEP");
+    }
+
+    public static void checkEngine(List<String> beavers, String engine)
+    {
+        if(engine == null)
+            return;
+
+        // The lockstep engine accepts its window size as a suffix (eg. lockstep4096)
+        if(isLockstep(engine))
+        {
+            if(engine.length() > 8 && !Utility.isInt(engine.substring(8)))
+                throw new IllegalArgumentException("Invalid window size in engine " + engine);
+
+            return;
+        }
+
+        // Engines that only support some beavers are checked against the whole list before anything runs
+        if(Beaver.parseEngine(engine) == Beaver.Engine.BITS)
+        {
+            for(String beaver : beavers)
+            {
+                String firstState = beaver.split("[^0-9A-Z_-]")[0].split("_")[0];
+                if(firstState.length() / 3 != 2)
+                    throw new IllegalArgumentException("The bits engine only supports 2 symbol beavers, but the list contains " + beaver);
+            }
+        }
+    }
+
+    public static void runBatch(List<String> beavers, String outputFileName, BigInteger maxSteps, String engine, int poolSize) throws IOException
+    {
+        // A work stealing pool keeps every thread busy while long running beavers finish
+        ExecutorService e = Executors.newWorkStealingPool(poolSize);
+        List<Future<List<BatchResult>>> results = new ArrayList<>();
+
+        if(isLockstep(engine))
+        {
+            int window = engine.length() > 8 ? Integer.parseInt(engine.substring(8)) : 1 << 12;
+            long stepLimit = Beaver.stepLimit(maxSteps);
+
+            for(int i = 0; i < beavers.size(); i += LOCKSTEP_CHUNK)
+            {
+                List<String> chunk = beavers.subList(i, Math.min(i + LOCKSTEP_CHUNK, beavers.size()));
+                results.add(e.submit(() -> runLockstep(chunk, stepLimit, window)));
+            }
+        }
+        else
+        {
+            for(String beaver : beavers)
+                results.add(e.submit(() -> List.of(runBeaver(beaver, maxSteps, engine))));
+        }
+
+        writeResults(results, outputFileName, e, null);
+    }
+
+    public static void runSeedBatch(SeedDatabase db, long first, long last, String outputFileName, BigInteger maxSteps, String engine, int poolSize) throws IOException
+    {
+        ExecutorService e = Executors.newWorkStealingPool(poolSize);
+        List<Future<List<BatchResult>>> results = new ArrayList<>();
+
+        // Each job decodes its own chunk of records, and every chunk reads the same mapped file
+        SeedDatabase.Cursor range = db.range(first, last);
+        long end = range.last;
+        for(long index = first; index <= end; index += LOCKSTEP_CHUNK)
+        {
+            SeedDatabase.Cursor cursor = db.range(index, Math.min(end, index + LOCKSTEP_CHUNK - 1));
+
+            if(isLockstep(engine))
+            {
+                int window = engine.length() > 8 ? Integer.parseInt(engine.substring(8)) : 1 << 12;
+                long stepLimit = Beaver.stepLimit(maxSteps);
+                results.add(e.submit(() -> runSeedLockstep(cursor, stepLimit, window)));
+            }
+            else
+                results.add(e.submit(() -> runSeedChunk(cursor, maxSteps, engine)));
+        }
+
+        writeResults(results, outputFileName, e, row -> db.beaverString(first + row));
+    }
+
+    private static void writeResults(List<Future<List<BatchResult>>> results, String outputFileName, ExecutorService e, LongFunction<String> beaverAt) throws IOException
+    {
+        PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(IO.dataPath + outputFileName)));
+        pw.println("TM, Result, Steps, Sigma, Tape Width, Time (ms)");
+
+        // Rows are written in the order of the input, and rows without a TM string look it up by their position
+        try
+        {
+            long row = 0;
+            for(Future<List<BatchResult>> result : results)
+                for(BatchResult r : result.get())
+                {
+                    pw.println(r.beaver != null ? toCSV(r) : toCSV(beaverAt.apply(row), r));
+                    ++row;
+                }
+        }
+        catch(InterruptedException | ExecutionException error)
+        {
+            throw new IOException("Batch run failed", error);
+        }
+        finally
+        {
+            pw.close();
+            e.shutdownNow();
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        String beaverListFile = null;
+        String seedFile = null;
+        long seedFirst = 0;
+        long seedLast = -1;
+        String outputFileName;
+        BigInteger maxSteps = BigInteger.valueOf(100000000);
+        String engine = null;
+        int poolSize = Runtime.getRuntime().availableProcessors();
+
+        // Get command line arguments
+        try
+        {
+            int argsIndex = 0;
+
+            // TMs come from a list file, or from a range of indices in the seed database
+            if(args[0].equals("--seed"))
+            {
+                seedFile = args[1];
+                seedFirst = Long.parseLong(args[2]);
+                seedLast = Long.parseLong(args[3]);
+                argsIndex = 4;
+            }
+            else
+                beaverListFile = args[argsIndex++];
+
+            outputFileName = args[argsIndex++];
+
+            if(args.length > argsIndex)
+                maxSteps = new BigInteger(args[argsIndex]);
+
+            if(args.length > argsIndex + 1 && !args[argsIndex + 1].equalsIgnoreCase("default"))
+                engine = args[argsIndex + 1];
+
+            if(args.length > argsIndex + 2)
+                poolSize = Integer.parseInt(args[argsIndex + 2]);
+        }
+        catch(Exception e)
+        {
+            System.out.println("Invalid arguments. Use the following command:");
+            System.out.println("java BeaverBatch <TM List File> <Output CSV Filename> [<Max steps per TM> [<Engine> [<Thread count>]]]");
+            System.out.println("java BeaverBatch --seed <Database file> <First index> <Last index> <Output CSV Filename> [<Max steps per TM> [<Engine> [<Thread count>]]]");
+            System.out.println("Example: java BeaverBatch BBList.txt results.csv 1000000 default 8");
+            System.out.println();
+            System.out.println("All filenames will be automatically be prepended with the data folder, currently \"" + IO.dataPath + "\" so only use the name of the file in the command (eg. BBList.txt)");
+            return;
+        }
+
+        Beaver.logging = false;
+
+        if(seedFile != null)
+        {
+            // Every TM in the seed database uses 2 symbols, so only the engine name needs checking
+            SeedDatabase db = new SeedDatabase(seedFile);
+            checkEngine(List.of(), engine);
+
+            Instant start = Instant.now();
+            runSeedBatch(db, seedFirst, seedLast, outputFileName, maxSteps, engine, poolSize);
+            Instant end = Instant.now();
+
+            long last = db.range(seedFirst, seedLast).last;
+            System.out.println("Ran " + (last - seedFirst + 1) + " TMs from the seed database on " + poolSize + " threads in " + Duration.between(start, end));
+            return;
+        }
+
+        List<String> beavers = IO.GetBeaverList(beaverListFile);
+
+        // A bad engine fails the whole batch here, instead of marking every row invalid
+        checkEngine(beavers, engine);
+
+        Instant start = Instant.now();
+        runBatch(beavers, outputFileName, maxSteps, engine, poolSize);
+        Instant end = Instant.now();
+
+        System.out.println("Ran " + beavers.size() + " TMs on " + poolSize + " threads in " + Duration.between(start, end));
+    }
+}
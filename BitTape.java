@@ -0,0 +1,130 @@
+public class BitTape extends Tape
+{
+    private static final int INITIAL_WORDS = 16;
+
+    // Cells of a 2 symbol tape are packed 64 to a word, growing in both directions
+    protected long[] words;
+    protected int headIndex;
+
+    // Bounds of the defined cells (inclusive)
+    protected int leftIndex;
+    protected int rightIndex;
+
+    BitTape()
+    {
+        // The inherited constructor already counted the starting cell as a defined zero
+        words = new long[INITIAL_WORDS];
+        headIndex = leftIndex = rightIndex = INITIAL_WORDS * Long.SIZE / 2;
+    }
+
+    private void grow()
+    {
+        // Double the capacity, splitting the new space between both ends of the tape
+        int shift = words.length / 2;
+        long[] newWords = new long[words.length * 2];
+        System.arraycopy(words, 0, newWords, shift, words.length);
+
+        words = newWords;
+        headIndex += shift * Long.SIZE;
+        leftIndex += shift * Long.SIZE;
+        rightIndex += shift * Long.SIZE;
+    }
+
+    @Override
+    public byte writeHead(byte val)
+    {
+        // Keep the inherited zero count current, so sigma() and isCleanTape() stay constant time
+        byte old = readHead();
+
+        if(val == Symbol.ZERO)
+            words[headIndex >>> 6] &= ~(1L << headIndex);
+        else if(val == 1)
+            words[headIndex >>> 6] |= 1L << headIndex;
+        else
+            throw new IllegalArgumentException("BitTape can only store the symbols 0 and 1, recieved: " + val);
+
+        if(old != val)
+            symbolZeroCount += val == Symbol.ZERO ? 1 : -1;
+
+        return val;
+    }
+
+    @Override
+    public byte readHead()
+    {
+        return (byte)((words[headIndex >>> 6] >>> headIndex) & 1);
+    }
+
+    @Override
+    public byte moveLeft()
+    {
+        // If the cell hasn't been visited, define it
+        if(headIndex == leftIndex)
+        {
+            if(leftIndex == 0)
+                grow();
+
+            --leftIndex;
+            ++definedCount;
+            ++symbolZeroCount;
+        }
+
+        --headIndex;
+        return readHead();
+    }
+
+    @Override
+    public byte moveRight()
+    {
+        // If the cell hasn't been visited, define it
+        if(headIndex == rightIndex)
+        {
+            if(rightIndex == words.length * Long.SIZE - 1)
+                grow();
+
+            ++rightIndex;
+            ++definedCount;
+            ++symbolZeroCount;
+        }
+
+        ++headIndex;
+        return readHead();
+    }
+
+    @Override
+    public byte peekLeft()
+    {
+        if(headIndex == leftIndex)
+            return defaultSymbol;
+
+        return (byte)((words[(headIndex - 1) >>> 6] >>> (headIndex - 1)) & 1);
+    }
+
+    @Override
+    public byte peekRight()
+    {
+        if(headIndex == rightIndex)
+            return defaultSymbol;
+
+        return (byte)((words[(headIndex + 1) >>> 6] >>> (headIndex + 1)) & 1);
+    }
+
+    @Override
+    public int cellCount()
+    {
+        return rightIndex - leftIndex + 1;
+    }
+
+    @Override
+    public int headCell()
+    {
+        return headIndex - leftIndex;
+    }
+
+    @Override
+    public byte cellAt(int index)
+    {
+        int i = leftIndex + index;
+        return (byte)((words[i >>> 6] >>> i) & 1);
+    }
+}
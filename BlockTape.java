@@ -0,0 +1,158 @@
+import java.util.Arrays;
+
+public class BlockTape
+{
+    // Run-length encoded cells on one side of the head, with the nearest block on top
+    private class BlockStack
+    {
+        byte[] symbol = new byte[16];
+        long[] count = new long[16];
+        int size = 0;
+
+        void push(byte s, long n)
+        {
+            // Merge with the nearest block when the symbols match
+            if(size > 0 && symbol[size - 1] == s)
+            {
+                count[size - 1] += n;
+                return;
+            }
+
+            if(size == symbol.length)
+            {
+                symbol = Arrays.copyOf(symbol, size * 2);
+                count = Arrays.copyOf(count, size * 2);
+            }
+
+            symbol[size] = s;
+            count[size] = n;
+            ++size;
+        }
+
+        byte pop()
+        {
+            // Past the last block, the tape is blank and a new cell is defined
+            if(size == 0)
+            {
+                ++definedCount;
+                return Symbol.ZERO;
+            }
+
+            byte s = symbol[size - 1];
+            remove(1);
+            return s;
+        }
+
+        void remove(long n)
+        {
+            count[size - 1] -= n;
+            if(count[size - 1] == 0)
+                --size;
+        }
+
+        long run(byte s)
+        {
+            // Length of the nearest block if it matches the symbol
+            if(size == 0 || symbol[size - 1] != s)
+                return 0;
+
+            return count[size - 1];
+        }
+    }
+
+    private BlockStack left = new BlockStack();
+    private BlockStack right = new BlockStack();
+    private byte headSymbol = Symbol.ZERO;
+
+    // Cell counts can exceed an int on accelerated runs
+    public long definedCount = 1;
+
+    public byte readHead()
+    {
+        return headSymbol;
+    }
+
+    public byte writeHead(byte val)
+    {
+        headSymbol = val;
+        return headSymbol;
+    }
+
+    public byte move(boolean direction)
+    {
+        BlockStack behind = direction == Tape.LEFT ? right : left;
+        BlockStack ahead = direction == Tape.LEFT ? left : right;
+
+        behind.push(headSymbol, 1);
+        headSymbol = ahead.pop();
+
+        return headSymbol;
+    }
+
+    public boolean isBlankAhead(boolean direction)
+    {
+        // Only undefined (blank) cells remain in this direction
+        return (direction == Tape.LEFT ? left : right).size == 0;
+    }
+
+    public long chainMove(byte val, boolean direction, long maxCells)
+    {
+        BlockStack behind = direction == Tape.LEFT ? right : left;
+        BlockStack ahead = direction == Tape.LEFT ? left : right;
+
+        // The head cell and the matching block ahead of it are all rewritten the same way
+        long cells = Math.min(1 + ahead.run(headSymbol), maxCells);
+
+        behind.push(val, cells);
+        if(cells > 1)
+            ahead.remove(cells - 1);
+        headSymbol = ahead.pop();
+
+        return cells;
+    }
+
+    public long sigma()
+    {
+        // Sigma is the number of defined nonzero symbols on the tape
+        long sigma = headSymbol != Symbol.ZERO ? 1 : 0;
+
+        for(int i = 0; i < left.size; ++i)
+            if(left.symbol[i] != Symbol.ZERO)
+                sigma += left.count[i];
+
+        for(int i = 0; i < right.size; ++i)
+            if(right.symbol[i] != Symbol.ZERO)
+                sigma += right.count[i];
+
+        return sigma;
+    }
+
+    private static void appendBlock(StringBuilder outString, byte symbol, long count)
+    {
+        // Matches the grouping used by TapeRenderer
+        char c = Symbol.symbolToChar(symbol);
+
+        if(count < 4)
+            outString.append(("" + c).repeat((int)count));
+        else
+            outString.append(c).append('^').append(count);
+
+        outString.append(' ');
+    }
+
+    public String toString()
+    {
+        StringBuilder outString = new StringBuilder();
+
+        // The left stack is printed from its bottom, the right stack from its top
+        for(int i = 0; i < left.size; ++i)
+            appendBlock(outString, left.symbol[i], left.count[i]);
+
+        outString.append('[').append(Symbol.symbolToChar(headSymbol)).append("] ");
+
+        for(int i = right.size - 1; i >= 0; --i)
+            appendBlock(outString, right.symbol[i], right.count[i]);
+
+        return outString.toString().trim();
+    }
+}
@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Canonicalizer
+{
+    // TMs in the same class behave identically up to renaming and mirroring
+    public record BeaverClass(String canonical, List<String> members) { }
+
+    private int[] transitions;
+    private int stateCount;
+    private int symbolCount;
+
+    // Best relabeled table found so far
+    private int[] best = null;
+    private int[] candidate;
+    private int[] stateLabel;
+    private int[] labelState;
+
+    private Canonicalizer(Beaver b)
+    {
+        transitions = b.transitions;
+        stateCount = b.states.length;
+        symbolCount = b.symbolCount;
+        candidate = new int[transitions.length];
+        stateLabel = new int[stateCount];
+        labelState = new int[stateCount];
+    }
+
+    public static int[] canonicalTransitions(Beaver b)
+    {
+        Canonicalizer c = new Canonicalizer(b);
+
+        // The blank symbol is fixed, every other symbol can be permuted
+        int[] symbolMap = new int[c.symbolCount];
+        for(int i = 0; i < symbolMap.length; ++i)
+            symbolMap[i] = i;
+
+        c.permuteSymbols(symbolMap, 1, false);
+        c.permuteSymbols(symbolMap, 1, true);
+
+        return c.best;
+    }
+
+    public static String canonicalForm(Beaver b)
+    {
+        return TNFEnumerator.toTMString(canonicalTransitions(b), b.symbolCount);
+    }
+
+    private void permuteSymbols(int[] symbolMap, int index, boolean mirror)
+    {
+        if(index >= symbolCount - 1)
+        {
+            relabel(symbolMap, mirror);
+            return;
+        }
+
+        for(int i = index; i < symbolCount; ++i)
+        {
+            swap(symbolMap, index, i);
+            permuteSymbols(symbolMap, index + 1, mirror);
+            swap(symbolMap, index, i);
+        }
+    }
+
+    private static void swap(int[] a, int i, int j)
+    {
+        int temp = a[i];
+        a[i] = a[j];
+        a[j] = temp;
+    }
+
+    private void relabel(int[] symbolMap, boolean mirror)
+    {
+        // Symbols are read in their new order, so find the old symbol for each new one
+        int[] oldSymbol = new int[symbolCount];
+        for(int i = 0; i < symbolCount; ++i)
+            oldSymbol[symbolMap[i]] = i;
+
+        // States are renamed in the order they are first reached, starting from A
+        Arrays.fill(stateLabel, -1);
+        stateLabel[0] = 0;
+        labelState[0] = 0;
+        int labelCount = 1;
+
+        for(int label = 0; label < stateCount; ++label)
+        {
+            // States that are never reached keep their original order after the reached ones
+            if(label == labelCount)
+                for(int s = 0; s < stateCount; ++s)
+                    if(stateLabel[s] < 0)
+                    {
+                        stateLabel[s] = labelCount;
+                        labelState[labelCount++] = s;
+                        break;
+                    }
+
+            int state = labelState[label];
+
+            for(int symbol = 0; symbol < symbolCount; ++symbol)
+            {
+                int t = transitions[state * symbolCount + oldSymbol[symbol]];
+                int target = State.packedTarget(t);
+                byte write = (byte)symbolMap[State.packedSymbol(t)];
+
+                // Halting transitions are never mirrored, as their direction does nothing
+                if(target == State.HALTED)
+                {
+                    candidate[label * symbolCount + symbol] = State.pack(write, Tape.RIGHT, State.HALTED);
+                    continue;
+                }
+
+                if(stateLabel[target] < 0)
+                {
+                    stateLabel[target] = labelCount;
+                    labelState[labelCount++] = target;
+                }
+
+                boolean dir = State.packedDir(t) != mirror;
+                candidate[label * symbolCount + symbol] = State.pack(write, dir, stateLabel[target]);
+            }
+        }
+
+        if(best == null || Arrays.compare(candidate, best) < 0)
+            best = candidate.clone();
+    }
+
+    public static List<BeaverClass> groupClasses(List<String> beavers)
+    {
+        // Classes are kept in the order their first member appears
+        Map<String, List<String>> classes = new LinkedHashMap<>();
+
+        for(String beaver : beavers)
+            classes.computeIfAbsent(canonicalForm(new Beaver(beaver)), k -> new ArrayList<>()).add(beaver);
+
+        List<BeaverClass> result = new ArrayList<>();
+        for(Map.Entry<String, List<String>> entry : classes.entrySet())
+            result.add(new BeaverClass(entry.getKey(), entry.getValue()));
+
+        return result;
+    }
+}
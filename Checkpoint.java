@@ -0,0 +1,71 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+public class Checkpoint
+{
+    // File layout: magic, version, TM, state, step count, head offset, cell count, then one byte per cell
+    private static final int MAGIC = 0x42424350;
+    private static final int VERSION = 1;
+
+    public record Contents(String beaver, int state, long steps, ArrayTape tape) { }
+
+    public static void save(String fileName, String beaver, int state, long steps, ArrayTape tape) throws IOException
+    {
+        Path path = Paths.get(IO.dataPath + fileName);
+        Path tempPath = Paths.get(IO.dataPath + fileName + ".tmp");
+        byte[] beaverBytes = beaver.getBytes(StandardCharsets.UTF_8);
+        int cellCount = tape.rightIndex - tape.leftIndex + 1;
+
+        ByteBuffer header = ByteBuffer.allocate(6 * Integer.BYTES + Long.BYTES + beaverBytes.length);
+        header.putInt(MAGIC).putInt(VERSION);
+        header.putInt(beaverBytes.length).put(beaverBytes);
+        header.putInt(state).putLong(steps);
+        header.putInt(tape.headIndex - tape.leftIndex).putInt(cellCount);
+        header.flip();
+
+        // Write the whole file next to the old checkpoint, then swap it in with a single rename
+        try(FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            ByteBuffer[] buffers = { header, ByteBuffer.wrap(tape.cells, tape.leftIndex, cellCount) };
+            while(buffers[1].hasRemaining())
+                channel.write(buffers);
+
+            channel.force(true);
+        }
+
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static Contents load(String fileName) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(Paths.get(IO.dataPath + fileName), StandardOpenOption.READ))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if(buffer.getInt() != MAGIC)
+                throw new IOException(fileName + " is not a checkpoint file.");
+            if(buffer.getInt() != VERSION)
+                throw new IOException(fileName + " was written by an unsupported checkpoint version.");
+
+            byte[] beaverBytes = new byte[buffer.getInt()];
+            buffer.get(beaverBytes);
+            int state = buffer.getInt();
+            long steps = buffer.getLong();
+            int headOffset = buffer.getInt();
+            int cellCount = buffer.getInt();
+
+            ArrayTape tape = new ArrayTape();
+            tape.load(buffer, cellCount, headOffset);
+
+            return new Contents(new String(beaverBytes, StandardCharsets.UTF_8), state, steps, tape);
+        }
+    }
+}
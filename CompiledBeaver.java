@@ -0,0 +1,139 @@
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+public class CompiledBeaver
+{
+    private static final String CLASS_NAME = "CompiledBeaverProgram";
+
+    // Base class of the generated code, which stores the results of a run
+    public static abstract class Program
+    {
+        public int state;
+        public long steps = 0;
+
+        public abstract void run(ArrayTape tape, long maxSteps);
+    }
+
+    public static String generateSource(Beaver beaver)
+    {
+        StringBuilder src = new StringBuilder();
+
+        src.append("public final class " + CLASS_NAME + " extends CompiledBeaver.Program\n{\n");
+        src.append("    public void run(ArrayTape tape, long maxSteps)\n    {\n");
+        src.append("        int state = this.state;\n");
+        src.append("        long steps = this.steps;\n\n");
+        src.append("        while(steps < maxSteps)\n        {\n");
+        src.append("            switch(state)\n            {\n");
+
+        // One block per state, with the transitions written as constants
+        for(State state : beaver.states)
+        {
+            src.append("                case " + state.state + ":\n");
+            src.append("                    switch(tape.readHead())\n                    {\n");
+
+            for(int symbol = 0; symbol < beaver.symbolCount; ++symbol)
+            {
+                src.append("                        " + (symbol == beaver.symbolCount - 1 ? "default" : "case " + symbol) + ":\n");
+                src.append("                            tape.writeHead((byte)" + state.symbol[symbol] + ");\n");
+                src.append("                            tape." + (state.dir[symbol] == Tape.LEFT ? "moveLeft" : "moveRight") + "();\n");
+                src.append("                            state = " + state.targetState[symbol] + ";\n");
+                src.append("                            break;\n");
+            }
+
+            src.append("                    }\n");
+            src.append("                    break;\n");
+        }
+
+        src.append("                default:\n");
+        src.append("                    this.state = state;\n");
+        src.append("                    this.steps = steps;\n");
+        src.append("                    return;\n");
+        src.append("            }\n\n");
+        src.append("            ++steps;\n");
+        src.append("        }\n\n");
+        src.append("        this.state = state;\n");
+        src.append("        this.steps = steps;\n");
+        src.append("    }\n}\n");
+
+        return src.toString();
+    }
+
+    private static byte[] compile(String source)
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if(compiler == null)
+            throw new IllegalStateException("The compiled engine requires a JDK, but no system Java compiler was found.");
+
+        // Keep the source and the generated class file in memory
+        JavaFileObject sourceFile = new SimpleJavaFileObject(URI.create("string:///" + CLASS_NAME + ".java"), JavaFileObject.Kind.SOURCE)
+        {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors)
+            {
+                return source;
+            }
+        };
+
+        Map<String, ByteArrayOutputStream> classFiles = new HashMap<>();
+        StandardJavaFileManager standardManager = compiler.getStandardFileManager(null, null, null);
+        JavaFileManager fileManager = new ForwardingJavaFileManager<StandardJavaFileManager>(standardManager)
+        {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling)
+            {
+                return new SimpleJavaFileObject(URI.create("mem:///" + className + kind.extension), kind)
+                {
+                    @Override
+                    public OutputStream openOutputStream()
+                    {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        classFiles.put(className, out);
+                        return out;
+                    }
+                };
+            }
+        };
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<String> options = List.of("-classpath", System.getProperty("java.class.path"), "-g:none");
+
+        if(!compiler.getTask(null, fileManager, diagnostics, options, null, List.of(sourceFile)).call())
+            throw new IllegalStateException("Failed to compile beaver: " + diagnostics.getDiagnostics());
+
+        return classFiles.get(CLASS_NAME).toByteArray();
+    }
+
+    public static Program compile(Beaver beaver)
+    {
+        byte[] classFile = compile(generateSource(beaver));
+
+        try
+        {
+            // Hidden classes are only reachable through the lookup, so every beaver gets a fresh class
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            Program program = (Program)lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+            program.state = beaver.startState;
+
+            return program;
+        }
+        catch(Throwable e)
+        {
+            throw new IllegalStateException("Failed to load compiled beaver", e);
+        }
+    }
+}
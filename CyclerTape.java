@@ -0,0 +1,91 @@
+import java.util.Arrays;
+
+public class CyclerTape extends ArrayTape
+{
+    // Copy of a configuration, used to prove that the TM has returned to it
+    public record Snapshot(int state, long position, long hash, long leftPosition, byte[] cells, long steps) { }
+
+    // Head position relative to the starting cell
+    public long position = 0;
+
+    // Zobrist style hash of the nonzero cells, updated on every write
+    public long hash = 0;
+
+    static long cellHash(long position, byte symbol)
+    {
+        // Blank cells add nothing, so undefined and zero cells hash the same
+        if(symbol == Symbol.ZERO)
+            return 0;
+
+        // SplitMix64 finalizer over the position and the symbol
+        long z = position * 0x9E3779B97F4A7C15L + symbol;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public byte writeHead(byte val)
+    {
+        if(cells[headIndex] != val)
+            hash ^= cellHash(position, cells[headIndex]) ^ cellHash(position, val);
+
+        return super.writeHead(val);
+    }
+
+    @Override
+    public byte moveLeft()
+    {
+        --position;
+        return super.moveLeft();
+    }
+
+    @Override
+    public byte moveRight()
+    {
+        ++position;
+        return super.moveRight();
+    }
+
+    public Snapshot snapshot(int state, long steps)
+    {
+        return new Snapshot(state, position, hash, position - (headIndex - leftIndex), Arrays.copyOfRange(cells, leftIndex, rightIndex + 1), steps);
+    }
+
+    private byte cellAt(long cellPosition)
+    {
+        long i = headIndex + (cellPosition - position);
+        if(i < leftIndex || i > rightIndex)
+            return Symbol.ZERO;
+
+        return cells[(int)i];
+    }
+
+    public void copyEdge(boolean side, byte[] out)
+    {
+        // Cells are copied from the head inward, away from the given side
+        for(int i = 0; i < out.length; ++i)
+            out[i] = cellAt(side == Tape.LEFT ? position + i : position - i);
+    }
+
+    public boolean matches(Snapshot s, int state)
+    {
+        // The hash rules out nearly every mismatch before the cells are compared
+        if(s.state != state || s.position != position || s.hash != hash)
+            return false;
+
+        long left = Math.min(s.leftPosition, position - (headIndex - leftIndex));
+        long right = Math.max(s.leftPosition + s.cells.length - 1, position + (rightIndex - headIndex));
+
+        for(long p = left; p <= right; ++p)
+        {
+            long i = p - s.leftPosition;
+            byte saved = i < 0 || i >= s.cells.length ? Symbol.ZERO : s.cells[(int)i];
+
+            if(saved != cellAt(p))
+                return false;
+        }
+
+        return true;
+    }
+}
@@ -1,34 +1,43 @@
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.HashMap;
 import java.util.Map;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class ESRecursive
 {
-    public record TapeState(int tapeIndex, boolean moveDirection, int nextState, BigInteger steps) { }
+    public record TapeState(int tapeIndex, boolean moveDirection, int nextState, StepCounter steps) { }
     public record TapeTransitions(Map<Integer, TapeState> headLeft, Map<Integer, TapeState> headRight) { }
-    public record SubtapeTransition(Subtape source, Subtape result, int state, int nextState) { }
     public static int loggingLevel = 0;
 
     private Map<Boolean, Set<Integer>> dirToStates;
     public BigInteger maxPossibleSteps;
+    public StepCounter maxStepBound;
     public int subtapeLength;
     public int symbolCount;
     public int haltCount = 0;
     public int loopCount = 0;
     
     public ArrayList<TapeTransitions> transitionLookup = new ArrayList<>();
-    public Set<Subtape> possibleSubtapes = new HashSet<Subtape>();
-    public ArrayList<SubtapeTransition> transitionList = new ArrayList<>();
+
+    // Each subtape maps to itself, so the id of a subtape that was already found can be looked up
+    public Map<Subtape, Subtape> possibleSubtapes = new HashMap<>();
     private ArrayDeque<Subtape> unexploredSubtapes = new ArrayDeque<>();
 
+    // Transitions are streamed here for the next level to read, and without a log none are recorded
+    private TransitionLog transitionLog;
+
     public class Subtape
     {
         public int tapeLength;
@@ -36,7 +45,10 @@ public class ESRecursive
         public boolean headDirection;
         public boolean halted = false;
         public boolean looping = false;
-        public BigInteger steps = BigInteger.ZERO;
+        public StepCounter steps = new StepCounter();
+
+        // Order in which the subtape was found, used for it in the transition log
+        public int id = -1;
 
         // BigHash and cached hash code for performance of the equals() function 
         BigInteger bigHash = BigInteger.ZERO;
@@ -99,7 +111,7 @@ public class ESRecursive
                     headDirection = Tape.RIGHT;
                     return state;
                 }
-                else if(steps.compareTo(maxPossibleSteps) >= 0)
+                else if(steps.reached(maxStepBound))
                 {
                     looping = true;
                     return state;
@@ -118,7 +130,7 @@ public class ESRecursive
                 tape[headIndex] = nextTape.tapeIndex;
 
                 // Move to the next state
-                steps = steps.add(nextTape.steps);
+                steps.add(nextTape.steps);
                 if(nextTape.moveDirection == Tape.LEFT)
                     --headIndex;
                 else
@@ -226,10 +238,11 @@ public class ESRecursive
         }
     }
 
-    public ESRecursive(Map<Boolean, Set<Integer>> stateDirs, Set<Subtape> subtapes, ArrayList<SubtapeTransition> transitions, int states, int length)
+    public ESRecursive(Map<Boolean, Set<Integer>> stateDirs, Collection<Subtape> subtapes, Path transitions, int states, int length, TransitionLog transitionLog) throws IOException
     {
         dirToStates = stateDirs;
         subtapeLength = length;
+        this.transitionLog = transitionLog;
 
         // Make a list of all possible tapes (ignoring head direction)
         Set<int[]> tempSubtapeList = new TreeSet<>((a,b) -> Arrays.compare(a,b));
@@ -241,6 +254,7 @@ public class ESRecursive
 
         symbolCount = subtapeList.size();
         maxPossibleSteps = Utility.TheoreticalMaxSteps(states, symbolCount, length);
+        maxStepBound = new StepCounter(maxPossibleSteps);
 
         // Initialize the lookup for transitions
         for(int i = 0; i < subtapeList.size(); ++i)
@@ -250,34 +264,52 @@ public class ESRecursive
             transitionLookup.add(new TapeTransitions(left, right));
         }
 
-        // Add every transition to the lookup
-        for(SubtapeTransition transition : transitions)
+        // Ids run from 0 in the order subtapes were found, so each one maps straight to the index of its tape
+        int[] tapeIndexById = new int[subtapes.size()];
+        boolean[] directionById = new boolean[subtapes.size()];
+        for(Subtape s : subtapes)
         {
-            // Get the index of each tape in the tape list
-            int sourceIndex = Collections.binarySearch(subtapeList, transition.source.tape, (a,b) -> Arrays.compare(a,b));
-            int resultIndex = Collections.binarySearch(subtapeList, transition.result.tape, (a,b) -> Arrays.compare(a,b));
-
-            // Generate a new transition with the indexes instead of the previous tape values
-            TapeState ts = new TapeState(resultIndex, transition.result().headDirection, transition.nextState(), transition.result().steps);
-            if(transition.source().headDirection == Tape.LEFT)
-                transitionLookup.get(sourceIndex).headLeft.put(transition.state(), ts);
-            else
-                transitionLookup.get(sourceIndex).headRight.put(transition.state(), ts);
+            tapeIndexById[s.id] = Collections.binarySearch(subtapeList, s.tape, (a,b) -> Arrays.compare(a,b));
+            directionById[s.id] = s.headDirection;
+        }
+
+        // Stream every transition into the lookup, with the indexes instead of the previous tape values
+        try(TransitionLog.Reader reader = new TransitionLog.Reader(transitions))
+        {
+            while(reader.next())
+            {
+                // Halted results are never kept, so the cell they leave behind does not matter
+                int resultIndex = 0;
+                boolean resultDirection = Tape.LEFT;
+                if(reader.result != TransitionLog.HALTED)
+                {
+                    resultIndex = tapeIndexById[reader.result];
+                    resultDirection = directionById[reader.result];
+                }
+
+                TapeState ts = new TapeState(resultIndex, resultDirection, reader.nextState, reader.stepCounter());
+                if(directionById[reader.source] == Tape.LEFT)
+                    transitionLookup.get(tapeIndexById[reader.source]).headLeft.put(reader.state, ts);
+                else
+                    transitionLookup.get(tapeIndexById[reader.source]).headRight.put(reader.state, ts);
+            }
         }
 
         generateSubtapes();
     }
 
-    private void generateSubtapes()
+    private void generateSubtapes() throws IOException
     {
         // Add the two empty tape possibilities
         Subtape blankSubtapeLeft = new Subtape(Tape.LEFT); // Empty tape, head to the left
+        blankSubtapeLeft.id = 0;
         unexploredSubtapes.add(blankSubtapeLeft); 
-        possibleSubtapes.add(blankSubtapeLeft);
+        possibleSubtapes.put(blankSubtapeLeft, blankSubtapeLeft);
         
         Subtape blankSubtapeRight = new Subtape(Tape.RIGHT); // Empty tape, head to the left
+        blankSubtapeRight.id = 1;
         unexploredSubtapes.add(blankSubtapeRight); 
-        possibleSubtapes.add(blankSubtapeRight);
+        possibleSubtapes.put(blankSubtapeRight, blankSubtapeRight);
 
         // Pop a subtape to evaluate
         while(!unexploredSubtapes.isEmpty())
@@ -297,7 +329,7 @@ public class ESRecursive
         }
     }
 
-    private void addSubtape(Subtape newTape, int state, Subtape sourceTape, int resultState)
+    private void addSubtape(Subtape newTape, int state, Subtape sourceTape, int resultState) throws IOException
     {
         // Do not add looping tapes to preserve memory
         if(newTape.looping)
@@ -306,18 +338,26 @@ public class ESRecursive
             return;
         }
 
-        // Document the state and original tape used to reach the new subtape
-        transitionList.add(new SubtapeTransition(sourceTape, newTape, state, resultState));
-        
+        int resultId = TransitionLog.HALTED;
         if(newTape.halted)
-        {
             ++haltCount;
-            return;
+        else
+        {
+            // Add the subtape, if it doesn't already exist, add it to the unexplored list
+            Subtape found = possibleSubtapes.putIfAbsent(newTape, newTape);
+            if(found == null)
+            {
+                newTape.id = possibleSubtapes.size() - 1;
+                unexploredSubtapes.add(newTape);
+                found = newTape;
+            }
+
+            resultId = found.id;
         }
 
-        // Add the subtape, if it doesn't already exist, add it to the unexplored list
-        if(possibleSubtapes.add(newTape))
-            unexploredSubtapes.add(newTape);
+        // Document the state and original tape used to reach the new subtape
+        if(transitionLog != null)
+            transitionLog.write(sourceTape.id, state, resultId, resultState, newTape.steps);
     }
 
     private static Map<Boolean, Set<Integer>> GenDirToStates(Beaver beaver)
@@ -340,63 +380,84 @@ public class ESRecursive
     }
 
     private ESRecursive() {} // Dummy constructor for initial subtape generation
-    private static Set<Subtape> GenPossibleSubtapes(Beaver beaver)
+    private static Collection<Subtape> GenPossibleSubtapes(Beaver beaver)
     {
-        Set<Subtape> tapeSet = new HashSet<>();
+        List<Subtape> tapes = new ArrayList<>();
 
         ESRecursive dummyES = new ESRecursive();
         dummyES.symbolCount = 2;
 
-        // Create a subtape for each symbol
-        for(int i = 0; i < beaver.symbolCount; ++i)
-        {
-            Subtape s = dummyES.new Subtape(1, Tape.LEFT);
-            s.tape[0] = i;
-            tapeSet.add(s);
-        }
-
-        return tapeSet;
-    }
-
-    private static ArrayList<SubtapeTransition> GenTransitionList(Beaver beaver)
-    {
-        ArrayList<SubtapeTransition> stateTransitions = new ArrayList<>();
-        Subtape[][] tapes = new Subtape[beaver.symbolCount][2];
-
-        // Create dummy subtapes for each symbol
-        ESRecursive dummyES = new ESRecursive();
+        // Create a subtape for each symbol and head direction, with the ids used by GenTransitionList
         for(int j = 0; j < 2; ++j)
             for(int i = 0; i < beaver.symbolCount; ++i)
             {
-                Subtape s = dummyES.new Subtape(1, Tape.LEFT);
+                Subtape s = dummyES.new Subtape(1, j == 1);
                 s.tape[0] = i;
-                s.headDirection = (j == 1);
-                tapes[i][j] = s;
+                s.id = j * beaver.symbolCount + i;
+                tapes.add(s);
             }
 
-        // Generate a SubtapeTransition for every transition entering from each side of the tape
-        for(int state = 0; state < beaver.states.length; ++state)
-            for(int symbol = 0; symbol < beaver.symbolCount; ++symbol)
-            {
-                stateTransitions.add(new SubtapeTransition(tapes[symbol][0], tapes[beaver.states[state].symbol[symbol]][beaver.states[state].dir[symbol] ? 1 : 0], state, beaver.states[state].targetState[symbol]));
-                stateTransitions.add(new SubtapeTransition(tapes[symbol][1], tapes[beaver.states[state].symbol[symbol]][beaver.states[state].dir[symbol] ? 1 : 0], state, beaver.states[state].targetState[symbol]));
-            }
+        return tapes;
+    }
 
-        return stateTransitions;
+    private static void GenTransitionList(Beaver beaver, Path path) throws IOException
+    {
+        try(TransitionLog log = new TransitionLog(path, beaver.beaverString, 1))
+        {
+            // Log a transition for every transition entering from each side of the tape
+            for(int state = 0; state < beaver.states.length; ++state)
+                for(int symbol = 0; symbol < beaver.symbolCount; ++symbol)
+                {
+                    int transition = beaver.transitions[state * beaver.symbolCount + symbol];
+                    int result = (State.packedDir(transition) ? beaver.symbolCount : 0) + State.packedSymbol(transition);
+
+                    log.write(symbol, state, result, State.packedTarget(transition), 0);
+                    log.write(beaver.symbolCount + symbol, state, result, State.packedTarget(transition), 0);
+                }
+        }
     }
 
-    public static ESRecursive Enumerate(String beaver, int initialSubtape, int subtapeMultiplier, int recursionCount)
+    public static ESRecursive Enumerate(String beaver, int initialSubtape, int subtapeMultiplier, int recursionCount) throws IOException
     {
         Beaver b = new Beaver(beaver);
-        ESRecursive recES = new ESRecursive(GenDirToStates(b), GenPossibleSubtapes(b), GenTransitionList(b), b.states.length, initialSubtape);
+        Map<Boolean, Set<Integer>> dirToStates = GenDirToStates(b);
+        Collection<Subtape> subtapes = GenPossibleSubtapes(b);
+        int length = initialSubtape;
+        ESRecursive recES = null;
 
-        for(int i = 0; i < recursionCount; ++i)
-            recES = new ESRecursive(recES.dirToStates, recES.possibleSubtapes, recES.transitionList, b.states.length, subtapeMultiplier);
+        // Each level reads the log of the level below it and writes its own, and the last level records nothing
+        Path transitions = Files.createTempFile(Paths.get(IO.dataPath), "transitions", ".bin");
+        try
+        {
+            GenTransitionList(b, transitions);
+
+            for(int i = 0; i <= recursionCount; ++i)
+            {
+                Path next = i < recursionCount ? Files.createTempFile(Paths.get(IO.dataPath), "transitions", ".bin") : null;
+                try(TransitionLog log = next != null ? new TransitionLog(next, beaver, length) : null)
+                {
+                    recES = new ESRecursive(dirToStates, subtapes, transitions, b.states.length, length, log);
+                }
+                finally
+                {
+                    Files.delete(transitions);
+                    transitions = next;
+                }
+
+                subtapes = recES.possibleSubtapes.values();
+                length = subtapeMultiplier;
+            }
+        }
+        finally
+        {
+            if(transitions != null)
+                Files.deleteIfExists(transitions);
+        }
 
         return recES;
     }
 
-    public static void main(String[] args) throws FileNotFoundException
+    public static void main(String[] args) throws IOException
     {
         String beaver = "1RB1RF_0LC1RC_1RD1LC_---0RE_1RA1LF_1RA0LE";
         int lengthOfSubtape = 10;
@@ -1,4 +1,3 @@
-import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
@@ -7,38 +6,81 @@ import java.util.stream.IntStream;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class EnumerateSubtapes
 {
-    public record SubtapeTransition(Subtape source, Subtape result, int state, int nextState) { }
     public static int loggingLevel = 2;
 
     public Beaver beaver;
     public Map<Boolean, Set<Integer>> statesFromDirection;
+    private int[] leftEntryStates;
+    private int[] rightEntryStates;
     public BigInteger maxPossibleSteps;
+    public long maxStepBound;
     public int subtapeLength;
     public int haltCount = 0;
     public int loopCount = 0;
-    
-    public Set<Subtape> possibleSubtapes = new HashSet<Subtape>();
-    public ArrayList<SubtapeTransition> transitionList = new ArrayList<>();
-    private ArrayDeque<Subtape> unexploredSubtapes = new ArrayDeque<>();
 
-    public class Subtape
+    // Subtapes are packed into fixed-width keys, with the head direction in the top bit of the last word if it fits
+    public int bitsPerSymbol;
+    public int symbolsPerWord;
+    public int wordsPerSubtape;
+    private static final int DIRECTION_BIT = Long.SIZE - 1;
+
+    // Subtapes are stored in the order they are found, so every index past the cursor is still unexplored
+    public SubtapeSet possibleSubtapes;
+    public static boolean mappedSubtapes = false;
+
+    // When set, the search runs on disk within this many bytes of memory instead of keeping a set
+    public static long externalBudget = 0;
+    private ExternalSubtapeSearch external = null;
+
+    // The budget is shared by every external search that can run at the same time
+    private static int externalSearchesAtOnce = 1;
+
+    // Transitions are streamed to the log as each level is merged, and without a log none are recorded
+    public TransitionLog transitionLog = null;
+
+    // Checked before every level, so a run whose result is no longer needed can stop early
+    private BooleanSupplier cancel = null;
+    public boolean cancelled = false;
+
+    // Levels of the search are split into chunks that are expanded in parallel
+    public static int threadCount = Runtime.getRuntime().availableProcessors();
+    private static final int LEVEL_CHUNK = 1 << 12;
+    private static ForkJoinPool pool = null;
+
+    // Cycle detection starts after this many steps, with a hash of each (cell, symbol) pair
+    private static final long FIRST_SNAPSHOT = 64;
+    private long[] cellHashes;
+
+    public class Subtape implements TapeRenderer.Cells
     {
         public int tapeLength;
         public byte[] tape;
         public boolean headDirection;
         public boolean halted = false;
         public boolean looping = false;
-        public BigInteger steps = BigInteger.ZERO;
+        public long steps = 0;
 
-        // BigHash and cached hash code for performance of the equals() function 
-        BigInteger bigHash = BigInteger.ZERO;
-        int cachedHashcode = 0;
+        // Packed key, cached for the equals() function
+        long[] key = null;
+
+        // Reused by every run of this subtape for cycle detection
+        private byte[] snapshotBuffer = null;
 
         Subtape(boolean head)
         {
@@ -66,12 +108,22 @@ public class EnumerateSubtapes
             for(int i = 0; i < tapeLength; ++i)
                 tape[i] = s.tape[i];
 
-            bigHash = s.bigHash;
-            cachedHashcode = s.cachedHashcode;
+            key = s.key;
 
             // Steps are ignored, as they were from the previous subtape transition
         }
 
+        public void copyFrom(Subtape s)
+        {
+            // Reuses this subtape as a copy of s, without allocating
+            headDirection = s.headDirection;
+            halted = s.halted;
+            looping = s.looping;
+            steps = 0;
+            key = null;
+            System.arraycopy(s.tape, 0, tape, 0, tapeLength);
+        }
+
         public int run(int state)
         {
             if(headDirection == Tape.LEFT)
@@ -82,9 +134,20 @@ public class EnumerateSubtapes
 
         private int runInternal(int headIndex, int state)
         {
-            // Reset hash
-            bigHash = BigInteger.ZERO;
-            cachedHashcode = 0;
+            // Reset the key, as the tape is about to change
+            key = null;
+
+            int[] transitions = beaver.transitions;
+            int symbolCount = beaver.symbolCount;
+
+            // Brent's algorithm compares every configuration to a snapshot taken at the last power of two steps
+            long runSteps = 0;
+            long nextSnapshot = FIRST_SNAPSHOT;
+            byte[] snapshotTape = null;
+            int snapshotHead = 0;
+            int snapshotState = 0;
+            long snapshotHash = 0;
+            long hash = 0;
 
             while(state != State.HALTED)
             {
@@ -99,85 +162,122 @@ public class EnumerateSubtapes
                     headDirection = Tape.RIGHT;
                     return state;
                 }
-                else if(steps.compareTo(maxPossibleSteps) >= 0)
+                else if(steps >= maxStepBound)
                 {
                     // If the max steps is exceeded, the TM is looping on the subtape
                     looping = true;
                     return state;
                 }
+
+                if(runSteps == nextSnapshot)
+                {
+                    // Runs that leave quickly never take a snapshot, and later snapshots reuse the same buffer
+                    if(snapshotTape == null)
+                    {
+                        if(snapshotBuffer == null)
+                            snapshotBuffer = new byte[tapeLength];
+
+                        snapshotTape = snapshotBuffer;
+                        for(int i = 0; i < tapeLength; ++i)
+                            hash ^= cellHashes[i * symbolCount + tape[i]];
+                    }
+
+                    System.arraycopy(tape, 0, snapshotTape, 0, tapeLength);
+                    snapshotHead = headIndex;
+                    snapshotState = state;
+                    snapshotHash = hash;
+                    nextSnapshot <<= 1;
+                }
+                else if(snapshotTape != null && headIndex == snapshotHead && state == snapshotState && hash == snapshotHash && Arrays.equals(tape, snapshotTape))
+                {
+                    // The configuration repeated, so the head can never leave the subtape
+                    looping = true;
+                    return state;
+                }
                 
                 // Read the tape
-                byte currSymbol = tape[headIndex];
-                steps = steps.add(BigInteger.ONE);
-
-                // Execute the transition
-                tape[headIndex] = beaver.states[state].symbol[currSymbol];
+                byte read = tape[headIndex];
+                int transition = transitions[state * symbolCount + read];
+                ++steps;
+                ++runSteps;
+
+                // Execute the transition, keeping the hash current once snapshots have started
+                byte write = State.packedSymbol(transition);
+                if(write != read)
+                {
+                    tape[headIndex] = write;
+                    if(snapshotTape != null)
+                        hash ^= cellHashes[headIndex * symbolCount + read] ^ cellHashes[headIndex * symbolCount + write];
+                }
 
-                if(beaver.states[state].dir[currSymbol] == Tape.LEFT)
+                if(State.packedDir(transition) == Tape.LEFT)
                     --headIndex;
                 else
                     ++headIndex;
 
-                state = beaver.states[state].targetState[currSymbol];
+                state = State.packedTarget(transition);
             }
 
             halted = true;
             return state;
         }
 
+        // The head is always just outside the subtape
         @Override
-        public String toString()
+        public int cellCount()
         {
-            StringBuilder s = new StringBuilder();
+            return tapeLength;
+        }
 
-            for(int i = 0; i < tape.length; ++i)
-                s.append(tape[i]);
+        @Override
+        public int headCell()
+        {
+            return -1;
+        }
 
-            return s.toString();
+        @Override
+        public byte cellAt(int index)
+        {
+            return tape[index];
         }
 
-        private BigInteger generateBigHash()
+        @Override
+        public String toString()
         {
-            // Record constant-sized variables
-            // Steps are not considered
-            long info = (17 + tapeLength) << 3;
+            return TapeRenderer.toString(this);
+        }
 
-            if(looping)
-                info += 4;
+        public void pack(long[] packed)
+        {
+            Arrays.fill(packed, 0);
 
-            if(halted)
-                info += 2;
+            for(int i = 0; i < tapeLength; ++i)
+                packed[i / symbolsPerWord] |= (long)tape[i] << ((i % symbolsPerWord) * bitsPerSymbol);
 
             if(headDirection)
-                info += 1;
-
-            BigInteger data = BigInteger.valueOf(info);
+                packed[wordsPerSubtape - 1] |= 1L << DIRECTION_BIT;
+        }
 
-            // Calculate how many cells can fit in a long
-            int bitsPerSymbol = Integer.highestOneBit(beaver.symbolCount - 1);
-            int symbolsPerLong = (Long.BYTES * 8) / bitsPerSymbol;
+        public void unpack(long[] packed)
+        {
+            long symbolMask = (1L << bitsPerSymbol) - 1;
 
-            info = 0;
-            // Add the tape to the data
             for(int i = 0; i < tapeLength; ++i)
-            {
-                // When the long is full, append it to data
-                if(i != 0 && i % symbolsPerLong == 0)
-                {
-                    data = data.shiftLeft((Long.BYTES * 8));
-                    data = data.add(BigInteger.valueOf(info));
-                    info = 0;
-                }
+                tape[i] = (byte)((packed[i / symbolsPerWord] >>> ((i % symbolsPerWord) * bitsPerSymbol)) & symbolMask);
 
-                info = (info << bitsPerSymbol) + tape[i];
-            }
+            headDirection = (packed[wordsPerSubtape - 1] >>> DIRECTION_BIT & 1) != 0;
+            key = null;
+        }
 
-            // Add the last segment of the tape to data
-            data = data.shiftLeft(64);
-            data = data.add(BigInteger.valueOf(info));
+        private long[] key()
+        {
+            if(key == null)
+            {
+                key = new long[wordsPerSubtape];
+                pack(key);
+            }
 
-            bigHash = data;
-            return bigHash;
+            return key;
         }
 
         @Override
@@ -193,14 +293,10 @@ public class EnumerateSubtapes
             if((halted && other.halted) || (looping && other.looping))
                 return true;
 
-            // Make sure both tapes already have a bigHash
-            if(bigHash == BigInteger.ZERO)
-                generateBigHash();
-            if(other.bigHash == BigInteger.ZERO)
-                other.generateBigHash();
-            
-            // BigInteger handles equals for us! How kind :)
-            return bigHash.equals(other.bigHash);
+            if(halted != other.halted || looping != other.looping)
+                return false;
+
+            return Arrays.equals(key(), other.key());
         }
 
         @Override
@@ -210,20 +306,44 @@ public class EnumerateSubtapes
                 return 1;
             if(looping)
                 return 2;
-            
-            if(bigHash == BigInteger.ZERO)
-                cachedHashcode = generateBigHash().hashCode();
 
-            return cachedHashcode;
+            return Arrays.hashCode(key());
         }
     }
 
     public EnumerateSubtapes(Beaver b, int length)
+    {
+        this(b, length, null, null);
+    }
+
+    public EnumerateSubtapes(Beaver b, int length, Path transitionLogPath)
+    {
+        this(b, length, transitionLogPath, null);
+    }
+
+    public EnumerateSubtapes(Beaver b, int length, Path transitionLogPath, BooleanSupplier cancel)
     {
         beaver = b;
         subtapeLength = length;
+        this.cancel = cancel;
+
+        // Symbols never straddle two words, and the direction takes a word of its own only if the last word is full
+        bitsPerSymbol = Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(b.symbolCount - 1));
+        symbolsPerWord = Long.SIZE / bitsPerSymbol;
+        wordsPerSubtape = (subtapeLength + symbolsPerWord - 1) / symbolsPerWord;
+        int lastWordSymbols = subtapeLength - (wordsPerSubtape - 1) * symbolsPerWord;
+        if(wordsPerSubtape == 0 || lastWordSymbols * bitsPerSymbol == Long.SIZE)
+            ++wordsPerSubtape;
+        if(externalBudget == 0)
+            possibleSubtapes = mappedSubtapes ? new MappedSubtapeSet(wordsPerSubtape) : new SubtapeSet(wordsPerSubtape);
+
+        cellHashes = new long[subtapeLength * b.symbolCount];
+        for(int i = 0; i < subtapeLength; ++i)
+            for(int symbol = 0; symbol < b.symbolCount; ++symbol)
+                cellHashes[i * b.symbolCount + symbol] = CyclerTape.cellHash(i, (byte)symbol);
 
         maxPossibleSteps = Utility.TheoreticalMaxSteps(b.states.length, b.symbolCount, subtapeLength);
+        maxStepBound = StepCounter.toLongBound(maxPossibleSteps);
 
         // Make a set of all states that can access a subtape from the each side
         statesFromDirection = new HashMap<>();
@@ -239,85 +359,316 @@ public class EnumerateSubtapes
                     statesFromDirection.get(!state.dir[i]).add(state.targetState[i]);
             }
 
-        generateSubtapes();
+        // Copied to arrays so expanding a subtape does not iterate a set
+        leftEntryStates = statesFromDirection.get(Tape.LEFT).stream().mapToInt(Integer::intValue).toArray();
+        rightEntryStates = statesFromDirection.get(Tape.RIGHT).stream().mapToInt(Integer::intValue).toArray();
+
+        try
+        {
+            // The external search never records transitions
+            if(transitionLogPath != null && externalBudget == 0)
+                transitionLog = new TransitionLog(transitionLogPath, b.beaverString, length);
+
+            generateSubtapes();
+
+            if(transitionLog != null)
+                transitionLog.close();
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    private void generateSubtapes()
+    // Subtapes found while expanding part of a level, merged in order once the whole level is done
+    private class Expansion
     {
-        // Add the starting two empty tape possibilities
-        Subtape blankSubtapeLeft = new Subtape(Tape.LEFT); // Empty tape, head to the left
-        unexploredSubtapes.add(blankSubtapeLeft); 
-        possibleSubtapes.add(blankSubtapeLeft);
-        
-        Subtape blankSubtapeRight = new Subtape(Tape.RIGHT); // Empty tape, head to the left
-        unexploredSubtapes.add(blankSubtapeRight); 
-        possibleSubtapes.add(blankSubtapeRight);
+        long[] keys = new long[wordsPerSubtape * 64];
+        int count = 0;
+        int haltCount = 0;
+        int loopCount = 0;
+
+        // Transitions to log, with the key of every result that did not halt, as the log needs ids even for subtapes already found
+        int transitionCount = 0;
+        int[] sources;
+        int[] states;
+        int[] nextStates;
+        long[] steps;
+        long[] resultKeys;
+
+        Expansion(int first, int last)
+        {
+            long[] key = new long[wordsPerSubtape];
+
+            if(transitionLog != null)
+            {
+                sources = new int[64];
+                states = new int[64];
+                nextStates = new int[64];
+                steps = new long[64];
+                resultKeys = new long[wordsPerSubtape * 64];
+            }
+
+            // Every run happens in the same two scratch subtapes
+            Subtape source = new Subtape(Tape.LEFT);
+            Subtape scratch = new Subtape(Tape.LEFT);
 
-        // Pop a subtape to evaluate
-        while(!unexploredSubtapes.isEmpty())
+            for(int index = first; index < last; ++index)
+            {
+                possibleSubtapes.get(index, key);
+                source.unpack(key);
+
+                // Check the subtape with each possible state
+                for(int state : entryStates(source.headDirection))
+                {
+                    // Generate new subtape from the previous one
+                    scratch.copyFrom(source);
+                    int nextState = scratch.run(state);
+
+                    addSubtape(scratch, state, index, nextState, key);
+                }
+            }
+        }
+
+        private void addSubtape(Subtape newTape, int state, int sourceIndex, int nextState, long[] key)
         {
-            Subtape source = unexploredSubtapes.pop();
+            // Do not add looping tapes to preserve memory
+            if(newTape.looping)
+            {
+                ++loopCount;
+                return;
+            }
 
-            // Check the subtape with each possible state
-            for(int state : statesFromDirection.get(source.headDirection))
+            if(newTape.halted)
             {
-                // Generate new subtape from the previous one
-                Subtape newTape = new Subtape(source);
-                int nextState = newTape.run(state);
+                ++haltCount;
+
+                if(transitionLog != null)
+                    recordTransition(sourceIndex, state, nextState, newTape.steps, null);
+                return;
+            }
+
+            newTape.pack(key);
 
-                // If the new subtape is not in the set, add it
-                addSubtape(newTape, state, source, nextState);
+            // Document the state and original tape used to reach the new subtape
+            if(transitionLog != null)
+            {
+                recordTransition(sourceIndex, state, nextState, newTape.steps, key);
+                return;
             }
+
+            // Subtapes from earlier levels can be dropped now, the rest are checked again when merging
+            if(possibleSubtapes.contains(key))
+                return;
+
+            if((count + 1) * wordsPerSubtape > keys.length)
+                keys = Arrays.copyOf(keys, keys.length * 2);
+
+            System.arraycopy(key, 0, keys, count * wordsPerSubtape, wordsPerSubtape);
+            ++count;
         }
+
+        private void recordTransition(int sourceIndex, int state, int nextState, long stepsTaken, long[] key)
+        {
+            if(transitionCount == sources.length)
+            {
+                sources = Arrays.copyOf(sources, transitionCount * 2);
+                states = Arrays.copyOf(states, transitionCount * 2);
+                nextStates = Arrays.copyOf(nextStates, transitionCount * 2);
+                steps = Arrays.copyOf(steps, transitionCount * 2);
+                resultKeys = Arrays.copyOf(resultKeys, resultKeys.length * 2);
+            }
+
+            sources[transitionCount] = sourceIndex;
+            states[transitionCount] = state;
+            nextStates[transitionCount] = nextState;
+            steps[transitionCount] = stepsTaken;
+            if(key != null)
+                System.arraycopy(key, 0, resultKeys, transitionCount * wordsPerSubtape, wordsPerSubtape);
+
+            ++transitionCount;
+        }
+
+        void merge() throws IOException
+        {
+            long[] key = new long[wordsPerSubtape];
+
+            // Adding the subtapes in the order they were found keeps the result identical to a sequential search
+            for(int i = 0; i < count; ++i)
+            {
+                System.arraycopy(keys, i * wordsPerSubtape, key, 0, wordsPerSubtape);
+                possibleSubtapes.add(key);
+            }
+
+            // Recorded results are added in the same order, and the ones already found are logged with their existing id
+            for(int i = 0; i < transitionCount; ++i)
+            {
+                int result = TransitionLog.HALTED;
+                if(nextStates[i] != State.HALTED)
+                {
+                    System.arraycopy(resultKeys, i * wordsPerSubtape, key, 0, wordsPerSubtape);
+                    result = possibleSubtapes.add(key);
+                    if(result < 0)
+                        result = possibleSubtapes.indexOf(key);
+                }
+
+                transitionLog.write(sources[i], states[i], result, nextStates[i], steps[i]);
+            }
+
+            EnumerateSubtapes.this.haltCount += haltCount;
+            EnumerateSubtapes.this.loopCount += loopCount;
+        }
+    }
+
+    int[] entryStates(boolean headDirection)
+    {
+        return headDirection == Tape.LEFT ? leftEntryStates : rightEntryStates;
     }
 
-    private void addSubtape(Subtape newTape, int state, Subtape sourceTape, int nextState)
+    public long subtapeCount()
     {
-        // Do not add looping tapes to preserve memory
-        if(newTape.looping)
+        return external != null ? external.subtapeCount : possibleSubtapes.size();
+    }
+
+    public TransitionLog.Subtapes subtapeLookup()
+    {
+        // One subtape is unpacked for each id, so rendering a log allocates nothing per line
+        Subtape subtape = new Subtape(Tape.LEFT);
+        long[] key = new long[wordsPerSubtape];
+
+        return new TransitionLog.Subtapes()
         {
-            ++loopCount;
-            return;
-        }
+            @Override
+            public TapeRenderer.Cells cells(int id)
+            {
+                possibleSubtapes.get(id, key);
+                subtape.unpack(key);
+                return subtape;
+            }
+
+            @Override
+            public boolean headDirection(int id)
+            {
+                return (possibleSubtapes.word(id, wordsPerSubtape - 1) >>> DIRECTION_BIT & 1) != 0;
+            }
+        };
+    }
+
+    public void close() throws IOException
+    {
+        if(possibleSubtapes != null)
+            possibleSubtapes.close();
+    }
 
-        // Document the state and original tape used to reach the new subtape
-        transitionList.add(new SubtapeTransition(sourceTape, newTape, state, nextState));
+    private static synchronized ForkJoinPool pool()
+    {
+        if(pool == null)
+            pool = new ForkJoinPool(threadCount);
+
+        return pool;
+    }
 
-        if(newTape.halted)
+    private void generateSubtapes() throws IOException
+    {
+        if(externalBudget > 0)
         {
-            ++haltCount;
+            // Start from the two blank subtapes, the same as the in-memory search
+            long[][] startKeys = new long[2][wordsPerSubtape];
+            new Subtape(Tape.LEFT).pack(startKeys[0]);
+            new Subtape(Tape.RIGHT).pack(startKeys[1]);
+
+            external = new ExternalSubtapeSearch(this, externalBudget / externalSearchesAtOnce);
+            external.run(startKeys, cancel);
             return;
         }
 
-        // Add the subtape, if it doesn't already exist, add it to the unexplored list
-        if(possibleSubtapes.add(newTape))
-            unexploredSubtapes.add(newTape);
+        long[] key = new long[wordsPerSubtape];
+
+        // Add the starting two empty tape possibilities
+        Subtape blankSubtapeLeft = new Subtape(Tape.LEFT); // Empty tape, head to the left
+        blankSubtapeLeft.pack(key);
+        possibleSubtapes.add(key);
+        
+        Subtape blankSubtapeRight = new Subtape(Tape.RIGHT); // Empty tape, head to the right
+        blankSubtapeRight.pack(key);
+        possibleSubtapes.add(key);
+
+        // Expand one level of the search at a time, where a level is every subtape found by the previous level
+        int levelStart = 0;
+        while(levelStart < possibleSubtapes.size())
+        {
+            if(cancel != null && cancel.getAsBoolean())
+            {
+                cancelled = true;
+                return;
+            }
+
+            int levelEnd = possibleSubtapes.size();
+            int chunkCount = (levelEnd - levelStart + LEVEL_CHUNK - 1) / LEVEL_CHUNK;
+
+            // Chunks are expanded and merged a few at a time, so a large level never holds all of its results at once
+            int groupSize = threadCount < 2 ? 1 : threadCount * 4;
+            for(int firstChunk = 0; firstChunk < chunkCount; firstChunk += groupSize)
+            {
+                final int groupStart = levelStart + firstChunk * LEVEL_CHUNK;
+                Expansion[] expansions = new Expansion[Math.min(groupSize, chunkCount - firstChunk)];
+
+                // Small levels are not worth handing to other threads
+                if(expansions.length == 1)
+                    expansions[0] = new Expansion(groupStart, Math.min(levelEnd, groupStart + LEVEL_CHUNK));
+                else
+                {
+                    // The set is only read while the chunks expand, and only written while merging
+                    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+                    for(int chunk = 0; chunk < expansions.length; ++chunk)
+                    {
+                        int c = chunk;
+                        tasks.add(ForkJoinTask.adapt(() -> expansions[c] = new Expansion(groupStart + c * LEVEL_CHUNK, Math.min(levelEnd, groupStart + (c + 1) * LEVEL_CHUNK))));
+                    }
+
+                    // Inside a pool task the chunks are forked from the current worker, which runs chunks while it waits instead of blocking
+                    if(ForkJoinTask.inForkJoinPool())
+                        ForkJoinTask.invokeAll(tasks);
+                    else
+                        pool().invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+                }
+
+                for(Expansion expansion : expansions)
+                    expansion.merge();
+            }
+
+            levelStart = levelEnd;
+        }
     }
 
-    private void evaluateTransitionList()
+    private void evaluateTransitionList(Path log) throws IOException
     {
-        record SubtapePath(Subtape source, Subtape result) { }
-
         int[] transitionsPerState = new int[beaver.states.length];
-        Set<SubtapePath> pathSet = new HashSet<SubtapePath>();
+        Set<Long> pathSet = new HashSet<>();
+        long transitionCount = 0;
         int duplicateCount = 0;
         int leftHead = 0;
         int rightHead = 0;
 
-        // Create a set of all unique source -> result subtape paths
-        for(int i = 0; i < transitionList.size(); ++i)
+        // Stream the log back, keeping only the unique source -> result id pairs, where every halted result is the same
+        if(log != null)
         {
-            SubtapeTransition transition = transitionList.get(i);
-
-            ++transitionsPerState[transition.state];
-            if(!pathSet.add(new SubtapePath(transition.source, transition.result)))
-                ++duplicateCount;
+            try(TransitionLog.Reader reader = new TransitionLog.Reader(log))
+            {
+                while(reader.next())
+                {
+                    ++transitionCount;
+                    ++transitionsPerState[reader.state];
+                    if(!pathSet.add((long)reader.source << 32 | (reader.result & 0xFFFFFFFFL)))
+                        ++duplicateCount;
+                }
+            }
         }
 
         // Record the direction of the head relative to each subtape found
-        for(Subtape tape : possibleSubtapes)
+        for(int i = 0; possibleSubtapes != null && i < possibleSubtapes.size(); ++i)
         {
-            if(tape.headDirection == Tape.LEFT)
+            if((possibleSubtapes.word(i, wordsPerSubtape - 1) >>> DIRECTION_BIT & 1) == 0)
                 ++leftHead;
             else
                 ++rightHead;
@@ -330,12 +681,108 @@ public class EnumerateSubtapes
         if(loggingLevel > 1)
         {
             // Generic stats about the TM with this subtape size
-            System.out.print("Total transitions: " + transitionList.size() + " Duplicate transitions: " + duplicateCount + " Transitions per state: " + Arrays.toString(transitionsPerState));
+            System.out.print("Total transitions: " + transitionCount + " Duplicate transitions: " + duplicateCount + " Transitions per state: " + Arrays.toString(transitionsPerState));
             System.out.println(" Halted transitions: " + haltCount + " Looped transitions: " + loopCount + " (not counted in other stats)");
         }
     }
 
 
+    // One spreadsheet row, shared by every TM in the same isomorphism class
+    private static class SpreadsheetRow
+    {
+        List<CompletableFuture<Long>> counts = new ArrayList<>();
+    }
+
+    private static void enumerateForRow(Beaver b, SpreadsheetRow row, int[] lengthArray, int lengthIndex, int maxSubtapesPerLength)
+    {
+        long subtapesFound;
+        try
+        {
+            EnumerateSubtapes es = new EnumerateSubtapes(b, lengthArray[lengthIndex]);
+            subtapesFound = es.subtapeCount();
+            es.close();
+        }
+        catch(Throwable error)
+        {
+            // Fail this length and every longer one, so the writer never waits on a length that will not run
+            for(int i = lengthIndex; i < row.counts.size(); ++i)
+                row.counts.get(i).completeExceptionally(error);
+            return;
+        }
+
+        row.counts.get(lengthIndex).complete(subtapesFound);
+
+        if(lengthIndex + 1 == row.counts.size())
+            return;
+
+        // The next length is only queued once this one stays under the limit, so a TM never runs more than one length at a time
+        if(maxSubtapesPerLength == 0 || subtapesFound <= maxSubtapesPerLength)
+            pool().execute(() -> enumerateForRow(b, row, lengthArray, lengthIndex + 1, maxSubtapesPerLength));
+        else
+        {
+            // Longer lengths are never written
+            for(int i = lengthIndex + 1; i < row.counts.size(); ++i)
+                row.counts.get(i).complete(-1L);
+        }
+    }
+
+    public static void runSpreadsheet(List<String> beavers, int[] lengthArray, int maxSubtapesPerLength) throws IOException
+    {
+        // Every pool thread can be running a TM, so each search gets its share of the RAM budget
+        externalSearchesAtOnce = threadCount;
+
+        // Spreadsheet results only depend on the isomorphism class, so each class is enumerated once
+        Map<String, SpreadsheetRow> classRows = new HashMap<>();
+        List<SpreadsheetRow> rows = new ArrayList<>();
+
+        // Every TM starts on its shortest length at once, and the pool runs them as threads free up
+        for(String beaver : beavers)
+        {
+            Beaver b = new Beaver(beaver);
+            String canonical = Canonicalizer.canonicalForm(b);
+
+            SpreadsheetRow row = classRows.get(canonical);
+            if(row == null)
+            {
+                SpreadsheetRow newRow = new SpreadsheetRow();
+                for(int i = 0; i < lengthArray.length; ++i)
+                    newRow.counts.add(new CompletableFuture<>());
+
+                pool().execute(() -> enumerateForRow(b, newRow, lengthArray, 0, maxSubtapesPerLength));
+
+                row = newRow;
+                classRows.put(canonical, row);
+            }
+
+            rows.add(row);
+        }
+
+        // Rows are written in the order of the input list, waiting on each count in turn
+        try
+        {
+            for(int r = 0; r < rows.size(); ++r)
+            {
+                StringBuilder line = new StringBuilder(beavers.get(r));
+
+                for(Future<Long> count : rows.get(r).counts)
+                {
+                    long subtapesFound = count.get();
+                    line.append(", " + subtapesFound);
+
+                    // If too many subtapes are being produced at this size, don't check longer subtapes
+                    if(maxSubtapesPerLength != 0 && subtapesFound > maxSubtapesPerLength)
+                        break;
+                }
+
+                System.out.println(line);
+            }
+        }
+        catch(InterruptedException | ExecutionException error)
+        {
+            throw new IOException("Enumeration failed", error);
+        }
+    }
+
     public static void main(String[] args) throws FileNotFoundException, IOException
     {
         String beaverListFile = "BBList.txt";
@@ -354,6 +801,21 @@ public class EnumerateSubtapes
         {
             int argsIndex = 0;
 
+            // Keep the subtapes in memory-mapped files, or search on disk within a memory budget in MB, and optionally keep the transition logs
+            while(args.length > argsIndex && args[argsIndex].startsWith("--"))
+            {
+                if(args[argsIndex].equals("--mapped"))
+                    mappedSubtapes = true;
+                else if(args[argsIndex].equals("--transitions"))
+                    saveTransitionListToFile = true;
+                else if(args[argsIndex].equals("--external"))
+                    externalBudget = Long.parseLong(args[++argsIndex]) << 20;
+                else
+                    throw new IllegalArgumentException(args[argsIndex]);
+
+                ++argsIndex;
+            }
+
             // Get logging level
             if(args.length > argsIndex && Utility.isInt(args[argsIndex]))
                 loggingLevel = Integer.parseInt(args[argsIndex++]);
@@ -396,14 +858,18 @@ public class EnumerateSubtapes
             // Get the cap on how many subtapes per length before the rest of the lengths are skipped
             if(args.length > argsIndex && Utility.isInt(args[argsIndex]))
                 maxSubtapesPerLength = Integer.parseInt(args[argsIndex++]);
+
+            // Get the number of threads to enumerate with
+            if(args.length > argsIndex && Utility.isInt(args[argsIndex]))
+                threadCount = Integer.parseInt(args[argsIndex++]);
         }
         catch(Exception e)
         {
             System.out.println("Invalid arguments. The following are proper command line prompts:");
-            System.out.println("To use default values: java EnumerateSubtapes [<logging level, 0-2>] <TM List File> [<Output CSV Filename> [<Max Subtapes To Enumerate>]]");
-            System.out.println("To run with a single length: java EnumerateSubtapes [<logging level, 0-2>] <TM List File> <Subtape Lengths> [<Output CSV Filename> [<Max Subtapes To Enumerate>]]");
-            System.out.println("To run with a range of prime lengths (up to prime #45): java EnumerateSubtapes [<logging level, 0-2>] <TM List File> <Index of First Prime> <Index of Last Prime> [<Output CSV Filename> [<Max Subtapes To Enumerate>]]");
-            System.out.println("To run a range of every nth length: java EnumerateSubtapes [<logging level, 0-2>] <TM List File> <Smallest Length> <Largest Length> <n> [<Output CSV Filename> [<Max Subtapes To Enumerate>]]");
+            System.out.println("To use default values: java EnumerateSubtapes [--mapped | --external <RAM budget in MB>] [--transitions] [<logging level, 0-2>] <TM List File> [<Output CSV Filename> [<Max Subtapes To Enumerate> [<Thread count>]]]");
+            System.out.println("To run with a single length: java EnumerateSubtapes [--mapped | --external <RAM budget in MB>] [--transitions] [<logging level, 0-2>] <TM List File> <Subtape Lengths> [<Output CSV Filename> [<Max Subtapes To Enumerate> [<Thread count>]]]");
+            System.out.println("To run with a range of prime lengths (up to prime #45): java EnumerateSubtapes [--mapped | --external <RAM budget in MB>] [--transitions] [<logging level, 0-2>] <TM List File> <Index of First Prime> <Index of Last Prime> [<Output CSV Filename> [<Max Subtapes To Enumerate> [<Thread count>]]]");
+            System.out.println("To run a range of every nth length: java EnumerateSubtapes [--mapped | --external <RAM budget in MB>] [--transitions] [<logging level, 0-2>] <TM List File> <Smallest Length> <Largest Length> <n> [<Output CSV Filename> [<Max Subtapes To Enumerate> [<Thread count>]]]");
             System.out.println();
             System.out.println("All filenames will be automatically be prepended with the data folder, currently \"" + IO.dataPath + "\" so only use the name of the file in the command (eg. BBList.txt)");
             return;
@@ -423,47 +889,49 @@ public class EnumerateSubtapes
         }
 
         List<String> beavers = IO.GetBeaverList(beaverListFile);
+        if(outputForSpreadsheet)
+        {
+            runSpreadsheet(beavers, lengthArray, maxSubtapesPerLength);
+            return;
+        }
+
         for(String beaver : beavers)
         {
             Beaver b = new Beaver(beaver);
-            
-            if(outputForSpreadsheet)
-                System.out.print(beaver);
 
             // Enumerate all subtapes generated by beaver b for each specified tape length
             for(int tapeLength : lengthArray)
             {
-                EnumerateSubtapes es = new EnumerateSubtapes(b, tapeLength);
-                int subtapesFound = es.possibleSubtapes.size();
+                // Transitions are only recorded when the log is kept or its stats are printed
+                Path transitionLogPath = null;
+                if(saveTransitionListToFile && externalBudget == 0)
+                    transitionLogPath = Paths.get(IO.dataPath + b.beaverString + "_transitions" + tapeLength + ".bin");
+                else if(loggingLevel > 1 && externalBudget == 0)
+                    transitionLogPath = Files.createTempFile(Paths.get(IO.dataPath), "transitions", ".bin");
 
-                if(saveTransitionListToFile)
-                    IO.SaveTransitionList(es);
+                EnumerateSubtapes es = new EnumerateSubtapes(b, tapeLength, transitionLogPath);
+                long subtapesFound = es.subtapeCount();
 
-                // Output results for this tape length
-                if(outputForSpreadsheet)
-                    System.out.print(", " + subtapesFound);
-                else
-                {
-                    // Check for odd transition ratios
-                    es.evaluateTransitionList();
+                // Check for odd transition ratios
+                es.evaluateTransitionList(transitionLogPath);
+                es.close();
 
-                    if(loggingLevel > 1)
-                    {
-                        // The maximum number of BB(x, S) tape permutations on a tape of length n is `2 * S^n` (the 2 accounts for where the TM head is relative to the subtape) 
-                        BigInteger tapePermuations = BigInteger.valueOf(b.symbolCount).pow(tapeLength).multiply(BigInteger.TWO);
+                if(transitionLogPath != null && !saveTransitionListToFile)
+                    Files.delete(transitionLogPath);
 
-                        System.out.print("" + subtapesFound + " total subtapes were found. Tapes halted " + es.haltCount + " times, and " + es.loopCount + " tapes looped. ");
-                        System.out.println("" + ((subtapesFound) * 100.0 / (tapePermuations.longValue())) + "% of the possible " + tapePermuations + " size " + tapeLength + " tapes.");
-                    }
+                if(loggingLevel > 1)
+                {
+                    // The maximum number of BB(x, S) tape permutations on a tape of length n is `2 * S^n` (the 2 accounts for where the TM head is relative to the subtape) 
+                    BigInteger tapePermuations = BigInteger.valueOf(b.symbolCount).pow(tapeLength).multiply(BigInteger.TWO);
+
+                    System.out.print("" + subtapesFound + " total subtapes were found. Tapes halted " + es.haltCount + " times, and " + es.loopCount + " tapes looped. ");
+                    System.out.println("" + ((subtapesFound) * 100.0 / (tapePermuations.longValue())) + "% of the possible " + tapePermuations + " size " + tapeLength + " tapes.");
                 }
 
                 // If too many subtapes are being produced at this size, don't check longer subtapes
                 if(maxSubtapesPerLength != 0 && subtapesFound > maxSubtapesPerLength)
                     break;
             }
-            
-            if(outputForSpreadsheet)
-                System.out.println();
         }
     }
 }
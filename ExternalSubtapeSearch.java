@@ -0,0 +1,461 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.BooleanSupplier;
+
+public class ExternalSubtapeSearch
+{
+    // Breadth-first search that keeps every subtape on disk in sorted files, removing duplicates once per level
+    private EnumerateSubtapes es;
+    private int wordsPerKey;
+    private Path directory;
+    private int fileCount = 0;
+
+    // Generated subtapes are collected here, then sorted and written as a run once it is full
+    private long[] buffer;
+    private int bufferCount = 0;
+    private List<Path> runs = new ArrayList<>();
+
+    // Every subtape found so far, as sorted files with no key in common, merged like a binary counter
+    private List<SortedFile> visited = new ArrayList<>();
+
+    // Sorted files keep the first key of every block in memory, so lookups only read the blocks they need
+    private static final int BLOCK_KEYS = 4096;
+
+    private record SortedFile(Path path, long count, long[] index) { }
+
+    public long subtapeCount = 0;
+    public int levelCount = 0;
+
+    ExternalSubtapeSearch(EnumerateSubtapes es, long ramBudget)
+    {
+        this.es = es;
+        wordsPerKey = es.wordsPerSubtape;
+
+        // Each key is a whole number of longs, so the buffer always ends on a key boundary
+        long keys = Math.max(1024, ramBudget / Long.BYTES / wordsPerKey);
+        buffer = new long[(int)Math.min(keys, (Integer.MAX_VALUE - 8) / wordsPerKey) * wordsPerKey];
+    }
+
+    // Reads a sorted file of keys one key at a time
+    private class KeyReader
+    {
+        FileChannel channel;
+        ByteBuffer bytes = ByteBuffer.allocate(1 << 16).order(ByteOrder.nativeOrder());
+        long[] key = new long[wordsPerKey];
+
+        KeyReader(Path path) throws IOException
+        {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            bytes.limit(0);
+        }
+
+        boolean next() throws IOException
+        {
+            if(bytes.remaining() < wordsPerKey * Long.BYTES)
+            {
+                bytes.compact();
+                while(bytes.hasRemaining() && channel.read(bytes) > 0);
+                bytes.flip();
+
+                if(bytes.remaining() < wordsPerKey * Long.BYTES)
+                {
+                    channel.close();
+                    return false;
+                }
+            }
+
+            for(int i = 0; i < wordsPerKey; ++i)
+                key[i] = bytes.getLong();
+
+            return true;
+        }
+    }
+
+    // Writes keys to a file in large blocks
+    private class KeyWriter implements AutoCloseable
+    {
+        Path path;
+        FileChannel channel;
+        ByteBuffer bytes = ByteBuffer.allocate(1 << 16).order(ByteOrder.nativeOrder());
+        long count = 0;
+        long[] index = new long[wordsPerKey * 16];
+
+        KeyWriter(Path path) throws IOException
+        {
+            this.path = path;
+            channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+
+        void write(long[] array, int offset) throws IOException
+        {
+            if(bytes.remaining() < wordsPerKey * Long.BYTES)
+                flush();
+
+            // Record the first key of each block
+            if(count % BLOCK_KEYS == 0)
+            {
+                int block = (int)(count / BLOCK_KEYS);
+                if((block + 1) * wordsPerKey > index.length)
+                    index = Arrays.copyOf(index, index.length * 2);
+
+                System.arraycopy(array, offset, index, block * wordsPerKey, wordsPerKey);
+            }
+
+            for(int i = 0; i < wordsPerKey; ++i)
+                bytes.putLong(array[offset + i]);
+
+            ++count;
+        }
+
+        SortedFile toSortedFile() throws IOException
+        {
+            close();
+            return new SortedFile(path, count, Arrays.copyOf(index, (int)((count + BLOCK_KEYS - 1) / BLOCK_KEYS) * wordsPerKey));
+        }
+
+        private void flush() throws IOException
+        {
+            bytes.flip();
+            while(bytes.hasRemaining())
+                channel.write(bytes);
+            bytes.clear();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if(channel.isOpen())
+            {
+                flush();
+                channel.close();
+            }
+        }
+    }
+
+    // Looks up keys in ascending order in a sorted file, reading only the blocks that could hold them
+    private class BlockCursor
+    {
+        SortedFile file;
+        FileChannel channel;
+        int blockCount;
+        int block = -1;
+        int loadedBlock = -1;
+        int loadedKeys = 0;
+        long[] keys = new long[BLOCK_KEYS * wordsPerKey];
+        ByteBuffer bytes = ByteBuffer.allocate(BLOCK_KEYS * wordsPerKey * Long.BYTES).order(ByteOrder.nativeOrder());
+
+        BlockCursor(SortedFile file) throws IOException
+        {
+            this.file = file;
+            channel = FileChannel.open(file.path(), StandardOpenOption.READ);
+            blockCount = file.index().length / wordsPerKey;
+        }
+
+        boolean contains(long[] key) throws IOException
+        {
+            // Keys arrive in order, so the block only ever moves forward
+            long[] index = file.index();
+            while(block + 1 < blockCount && Arrays.compare(index, (block + 1) * wordsPerKey, (block + 2) * wordsPerKey, key, 0, wordsPerKey) <= 0)
+                ++block;
+
+            if(block < 0)
+                return false;
+
+            if(block != loadedBlock)
+            {
+                loadedKeys = (int)Math.min(BLOCK_KEYS, file.count() - (long)block * BLOCK_KEYS);
+                bytes.clear().limit(loadedKeys * wordsPerKey * Long.BYTES);
+
+                long position = (long)block * BLOCK_KEYS * wordsPerKey * Long.BYTES;
+                while(bytes.hasRemaining())
+                    position += channel.read(bytes, position);
+
+                bytes.flip();
+                bytes.asLongBuffer().get(keys, 0, loadedKeys * wordsPerKey);
+                loadedBlock = block;
+            }
+
+            // Binary search the block
+            int low = 0;
+            int high = loadedKeys - 1;
+            while(low <= high)
+            {
+                int mid = (low + high) >>> 1;
+                int order = Arrays.compare(keys, mid * wordsPerKey, (mid + 1) * wordsPerKey, key, 0, wordsPerKey);
+
+                if(order == 0)
+                    return true;
+                else if(order < 0)
+                    low = mid + 1;
+                else
+                    high = mid - 1;
+            }
+
+            return false;
+        }
+    }
+
+    private Path newFile()
+    {
+        return directory.resolve("run" + (fileCount++) + ".bin");
+    }
+
+    public void run(long[][] startKeys, BooleanSupplier cancel) throws IOException
+    {
+        directory = Files.createTempDirectory(Paths.get(IO.dataPath), "subtapes");
+
+        try
+        {
+            // The first frontier is the starting subtapes
+            for(long[] key : startKeys)
+                bufferKey(key);
+
+            SortedFile frontier = mergeNewKeys();
+
+            while(frontier.count() > 0)
+            {
+                subtapeCount += frontier.count();
+
+                if(cancel != null && cancel.getAsBoolean())
+                {
+                    es.cancelled = true;
+                    return;
+                }
+
+                ++levelCount;
+                expand(frontier.path());
+
+                // The expanded frontier joins the visited files before the next frontier is checked against them
+                visited.add(frontier);
+                compactVisited();
+
+                frontier = mergeNewKeys();
+            }
+        }
+        finally
+        {
+            // Remove every file left in the directory, then the directory itself
+            try(var files = Files.list(directory))
+            {
+                for(Path path : (Iterable<Path>)files::iterator)
+                    Files.delete(path);
+            }
+
+            Files.delete(directory);
+        }
+    }
+
+    private void expand(Path frontier) throws IOException
+    {
+        long[] key = new long[wordsPerKey];
+        EnumerateSubtapes.Subtape source = es.new Subtape(Tape.LEFT);
+        EnumerateSubtapes.Subtape scratch = es.new Subtape(Tape.LEFT);
+        KeyReader reader = new KeyReader(frontier);
+
+        // Same expansion as the in-memory search, except every result is kept until the level is sorted
+        while(reader.next())
+        {
+            source.unpack(reader.key);
+
+            for(int state : es.entryStates(source.headDirection))
+            {
+                scratch.copyFrom(source);
+                scratch.run(state);
+
+                if(scratch.looping)
+                    ++es.loopCount;
+                else if(scratch.halted)
+                    ++es.haltCount;
+                else
+                {
+                    scratch.pack(key);
+                    bufferKey(key);
+                }
+            }
+        }
+    }
+
+    private void bufferKey(long[] key) throws IOException
+    {
+        if(bufferCount * wordsPerKey == buffer.length)
+            writeRun();
+
+        System.arraycopy(key, 0, buffer, bufferCount * wordsPerKey, wordsPerKey);
+        ++bufferCount;
+    }
+
+    private void writeRun() throws IOException
+    {
+        if(bufferCount == 0)
+            return;
+
+        sortBuffer();
+
+        // Duplicates are next to each other once sorted, so only the first of each is written
+        Path path = newFile();
+        try(KeyWriter out = new KeyWriter(path))
+        {
+            for(int i = 0; i < bufferCount; ++i)
+                if(i == 0 || compareBuffered(i - 1, i) != 0)
+                    out.write(buffer, i * wordsPerKey);
+        }
+
+        runs.add(path);
+        bufferCount = 0;
+    }
+
+    private SortedFile mergeNewKeys() throws IOException
+    {
+        writeRun();
+
+        // Merge every run in key order, dropping duplicates between runs
+        PriorityQueue<KeyReader> queue = new PriorityQueue<>((a, b) -> Arrays.compare(a.key, b.key));
+        for(Path run : runs)
+        {
+            KeyReader reader = new KeyReader(run);
+            if(reader.next())
+                queue.add(reader);
+        }
+
+        // A merged key is new if no visited file has it
+        BlockCursor[] seen = new BlockCursor[visited.size()];
+        for(int i = 0; i < seen.length; ++i)
+            seen[i] = new BlockCursor(visited.get(i));
+
+        long[] last = new long[wordsPerKey];
+        boolean first = true;
+        SortedFile result;
+
+        try(KeyWriter out = new KeyWriter(newFile()))
+        {
+            while(!queue.isEmpty())
+            {
+                KeyReader reader = queue.poll();
+
+                if(first || !Arrays.equals(last, reader.key))
+                {
+                    System.arraycopy(reader.key, 0, last, 0, wordsPerKey);
+                    first = false;
+
+                    boolean found = false;
+                    for(int i = 0; i < seen.length && !found; ++i)
+                        found = seen[i].contains(last);
+
+                    if(!found)
+                        out.write(last, 0);
+                }
+
+                if(reader.next())
+                    queue.add(reader);
+            }
+
+            result = out.toSortedFile();
+        }
+
+        for(BlockCursor cursor : seen)
+            cursor.channel.close();
+
+        for(Path run : runs)
+            Files.delete(run);
+        runs.clear();
+
+        return result;
+    }
+
+    private void compactVisited() throws IOException
+    {
+        // Merging the newest file into the one before it whenever it is as large keeps the file count logarithmic
+        while(visited.size() > 1 && visited.get(visited.size() - 1).count() >= visited.get(visited.size() - 2).count())
+        {
+            SortedFile newer = visited.remove(visited.size() - 1);
+            SortedFile older = visited.remove(visited.size() - 1);
+            KeyReader a = new KeyReader(older.path());
+            KeyReader b = new KeyReader(newer.path());
+            boolean hasA = a.next();
+            boolean hasB = b.next();
+
+            // The files never share a key, so a plain merge keeps them unique
+            try(KeyWriter out = new KeyWriter(newFile()))
+            {
+                while(hasA || hasB)
+                {
+                    if(!hasB || (hasA && Arrays.compare(a.key, b.key) < 0))
+                    {
+                        out.write(a.key, 0);
+                        hasA = a.next();
+                    }
+                    else
+                    {
+                        out.write(b.key, 0);
+                        hasB = b.next();
+                    }
+                }
+
+                visited.add(out.toSortedFile());
+            }
+
+            Files.delete(older.path());
+            Files.delete(newer.path());
+        }
+    }
+
+    private int compareBuffered(int a, int b)
+    {
+        return Arrays.compare(buffer, a * wordsPerKey, (a + 1) * wordsPerKey, buffer, b * wordsPerKey, (b + 1) * wordsPerKey);
+    }
+
+    private void sortBuffer()
+    {
+        if(wordsPerKey == 1)
+        {
+            Arrays.sort(buffer, 0, bufferCount);
+            return;
+        }
+
+        // Heapsort keeps multi-word keys in place, so sorting needs no memory beyond the buffer
+        for(int i = bufferCount / 2 - 1; i >= 0; --i)
+            siftDown(i, bufferCount);
+
+        for(int end = bufferCount - 1; end > 0; --end)
+        {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    private void siftDown(int i, int count)
+    {
+        while(2 * i + 1 < count)
+        {
+            int child = 2 * i + 1;
+            if(child + 1 < count && compareBuffered(child, child + 1) < 0)
+                ++child;
+
+            if(compareBuffered(i, child) >= 0)
+                return;
+
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int a, int b)
+    {
+        for(int w = 0; w < wordsPerKey; ++w)
+        {
+            long temp = buffer[a * wordsPerKey + w];
+            buffer[a * wordsPerKey + w] = buffer[b * wordsPerKey + w];
+            buffer[b * wordsPerKey + w] = temp;
+        }
+    }
+}
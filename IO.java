@@ -2,7 +2,6 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
@@ -22,34 +21,6 @@ public class IO
         return beaverList;
     }
     
-    public static void SaveTransitionList(EnumerateSubtapes subtapes) throws IOException
-    {
-        String fileName = dataPath + subtapes.beaver.beaverString + "_transitions" + subtapes.subtapeLength + ".txt";
-        PrintWriter pw = new PrintWriter(new File(fileName));
-
-        // For each transition, generate a line with <source tape> <steps taken> <result tape>
-        for(EnumerateSubtapes.SubtapeTransition t : subtapes.transitionList)
-        {
-            String sourceTape;
-            if(t.source().headDirection == Tape.LEFT)
-                sourceTape = State.stateToChar(t.state()) + ">" + t.source().toString();
-            else
-                sourceTape = t.source().toString() + "<" + State.stateToChar(t.state());
-
-            String resultTape;
-            if(t.result().halted)
-                resultTape = "HALT";
-            else if(t.result().headDirection == Tape.LEFT)
-                resultTape = "<" + State.stateToChar(t.nextState()) + t.result().toString();
-            else
-                resultTape = t.result().toString() + State.stateToChar(t.nextState()) + ">";
-
-            pw.println(sourceTape + " " + t.result().steps + " " + resultTape);
-        }
-
-        pw.close();
-    }
-
     public static void systemOutToFile(String outputFileName) throws IOException
     {
         File outFile = new File(dataPath + outputFileName);
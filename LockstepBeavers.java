@@ -0,0 +1,151 @@
+import java.util.Arrays;
+
+public class LockstepBeavers
+{
+    public static final byte RUNNING = 0;
+    public static final byte HALTED = 1;
+    public static final byte OUT_OF_WINDOW = 2;
+
+    public int capacity;
+    public int window;
+    public int count = 0;
+
+    // Packed transition tables of every machine, concatenated into one array
+    private int[] transitions = new int[1024];
+    private int transitionCount = 0;
+    private int[] tableOffset;
+    private byte[] symbolCount;
+
+    // Per machine run state, kept in parallel arrays instead of one object per machine
+    public int[] state;
+    public int[] head;
+    public int[] minHead;
+    public int[] maxHead;
+    public long[] steps;
+    public byte[] status;
+
+    // Every machine owns a fixed window of cells, starting with the head in the middle
+    private byte[] tape;
+
+    // Indices of the machines that are still running
+    private int[] active;
+    private int activeCount = 0;
+
+    LockstepBeavers(int capacity, int window)
+    {
+        this.capacity = capacity;
+        this.window = window;
+
+        tableOffset = new int[capacity];
+        symbolCount = new byte[capacity];
+        state = new int[capacity];
+        head = new int[capacity];
+        minHead = new int[capacity];
+        maxHead = new int[capacity];
+        steps = new long[capacity];
+        status = new byte[capacity];
+        tape = new byte[capacity * window];
+        active = new int[capacity];
+    }
+
+    public int add(Beaver b)
+    {
+        return add(b.transitions, b.symbolCount, b.startState);
+    }
+
+    public int add(int[] table, int symbols, int startState)
+    {
+        if(count == capacity)
+            throw new IllegalStateException("Lockstep batch is full at " + capacity + " machines.");
+
+        if(transitionCount + table.length > transitions.length)
+            transitions = Arrays.copyOf(transitions, Math.max(transitions.length * 2, transitionCount + table.length));
+
+        System.arraycopy(table, 0, transitions, transitionCount, table.length);
+
+        int m = count++;
+        tableOffset[m] = transitionCount;
+        symbolCount[m] = (byte)symbols;
+        state[m] = startState;
+        head[m] = minHead[m] = maxHead[m] = m * window + window / 2;
+        steps[m] = 0;
+        status[m] = RUNNING;
+        active[activeCount++] = m;
+        transitionCount += table.length;
+
+        return m;
+    }
+
+    public void clear()
+    {
+        // Reuse the arrays for the next batch
+        Arrays.fill(tape, 0, count * window, Symbol.ZERO);
+        count = 0;
+        activeCount = 0;
+        transitionCount = 0;
+    }
+
+    public int activeCount()
+    {
+        return activeCount;
+    }
+
+    public void run(long maxSteps)
+    {
+        // Every running machine advances one step per iteration
+        for(long step = 0; step < maxSteps && activeCount > 0; ++step)
+        {
+            int i = 0;
+            while(i < activeCount)
+            {
+                int m = active[i];
+                int h = head[m];
+                int transition = transitions[tableOffset[m] + state[m] * symbolCount[m] + tape[h]];
+
+                tape[h] = State.packedSymbol(transition);
+                h += State.packedDir(transition) == Tape.LEFT ? -1 : 1;
+                state[m] = State.packedTarget(transition);
+                head[m] = h;
+                ++steps[m];
+
+                if(h < minHead[m])
+                    minHead[m] = h;
+                else if(h > maxHead[m])
+                    maxHead[m] = h;
+
+                // Retire machines by swapping the last active machine into their slot
+                int start = m * window;
+                if(state[m] == State.HALTED)
+                    status[m] = HALTED;
+                else if(h < start || h >= start + window)
+                    status[m] = OUT_OF_WINDOW;
+                else
+                {
+                    ++i;
+                    continue;
+                }
+
+                active[i] = active[--activeCount];
+            }
+        }
+    }
+
+    public long sigma(int m)
+    {
+        // Only the cells the head has visited can be nonzero
+        long sigma = 0;
+        int start = Math.max(minHead[m], m * window);
+        int end = Math.min(maxHead[m], (m + 1) * window - 1);
+        for(int cell = start; cell <= end; ++cell)
+            if(tape[cell] != Symbol.ZERO)
+                ++sigma;
+
+        return sigma;
+    }
+
+    public long definedCount(int m)
+    {
+        // A machine that left the window defined the cell it moved onto as well
+        return maxHead[m] - minHead[m] + 1;
+    }
+}
@@ -0,0 +1,222 @@
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class MacroMachine
+{
+    // Result of running the TM on a single block, entering from one side
+    // A halting transition can still move the head out of the block, so leaving the block is recorded apart from halting
+    public record MacroTransition(long block, boolean exitDirection, boolean exited, int nextState, long steps, boolean halted, boolean looping, int minCell, int maxCell) { }
+
+    private int[] transitions;
+    private int symbolCount;
+    public int blockSize;
+    private int bitsPerSymbol;
+    private long symbolMask;
+    private long maxBlockSteps;
+    private byte[] scratch;
+
+    // Bounded transition cache with least recently used eviction
+    private Map<Long, MacroTransition> cache;
+    public long cacheHits = 0;
+    public long cacheMisses = 0;
+    public long cacheEvictions = 0;
+
+    // Macro tape of packed blocks that grows in both directions
+    private long[] tape = new long[1024];
+    private int headIndex = tape.length / 2;
+    private int leftIndex = headIndex;
+    private int rightIndex = headIndex;
+    private int leftMinCell;
+    private int rightMaxCell;
+
+    // Results
+    public long stepCount = 0;
+    public boolean halted = false;
+    public boolean runsForever = false;
+
+    MacroMachine(Beaver b, int k, int cacheCapacity)
+    {
+        transitions = b.transitions;
+        symbolCount = b.symbolCount;
+        blockSize = k;
+        bitsPerSymbol = (Integer.BYTES * 8) - Integer.numberOfLeadingZeros(b.symbolCount - 1);
+        symbolMask = (1L << bitsPerSymbol) - 1;
+        scratch = new byte[k];
+
+        // Cache keys hold the block, the state and the side the head enters from
+        if(k < 1 || k * bitsPerSymbol > 58)
+            throw new IllegalArgumentException("Macro blocks of " + k + " cells do not fit in a cache key. The limit is " + (58 / bitsPerSymbol) + " cells for this beaver.");
+
+        // A run longer than the number of block configurations must be looping
+        maxBlockSteps = Utility.TheoreticalMaxSteps(b.states.length, b.symbolCount, k).min(BigInteger.valueOf(Long.MAX_VALUE)).longValue();
+
+        cache = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MacroTransition> eldest)
+            {
+                if(size() <= cacheCapacity)
+                    return false;
+
+                ++cacheEvictions;
+                return true;
+            }
+        };
+
+        leftMinCell = rightMaxCell = 0;
+    }
+
+    private MacroTransition runBlock(long block, int state, boolean entrySide, long maxSteps)
+    {
+        // Unpack the block, with the first cell in the lowest bits
+        for(int i = 0; i < blockSize; ++i)
+            scratch[i] = (byte)((block >>> (i * bitsPerSymbol)) & symbolMask);
+
+        int headCell = entrySide == Tape.LEFT ? 0 : blockSize - 1;
+        int minCell = headCell;
+        int maxCell = headCell;
+        long steps = 0;
+        boolean looping = false;
+
+        while(state != State.HALTED && headCell >= 0 && headCell < blockSize)
+        {
+            if(steps >= maxSteps)
+            {
+                looping = true;
+                break;
+            }
+
+            // Execute the transition
+            int transition = transitions[state * symbolCount + scratch[headCell]];
+            ++steps;
+            scratch[headCell] = State.packedSymbol(transition);
+
+            if(State.packedDir(transition) == Tape.LEFT)
+                --headCell;
+            else
+                ++headCell;
+
+            state = State.packedTarget(transition);
+
+            minCell = Math.min(minCell, headCell);
+            maxCell = Math.max(maxCell, headCell);
+        }
+
+        // Repack the block
+        long result = 0;
+        for(int i = 0; i < blockSize; ++i)
+            result |= (long)scratch[i] << (i * bitsPerSymbol);
+
+        return new MacroTransition(result, headCell < 0 ? Tape.LEFT : Tape.RIGHT, headCell < 0 || headCell >= blockSize, state, steps, state == State.HALTED, looping,
+            Math.max(minCell, 0), Math.min(maxCell, blockSize - 1));
+    }
+
+    private void grow()
+    {
+        // Double the capacity, splitting the new space between both ends of the tape
+        int shift = tape.length / 2;
+        long[] newTape = new long[tape.length * 2];
+        System.arraycopy(tape, 0, newTape, shift, tape.length);
+
+        tape = newTape;
+        headIndex += shift;
+        leftIndex += shift;
+        rightIndex += shift;
+    }
+
+    public void run(int state, long maxSteps)
+    {
+        boolean entrySide = Tape.LEFT;
+
+        while(state != State.HALTED && stepCount < maxSteps)
+        {
+            long key = (tape[headIndex] << 6) | (state << 1) | (entrySide ? 1 : 0);
+            MacroTransition t = cache.get(key);
+
+            if(t == null)
+            {
+                ++cacheMisses;
+                t = runBlock(tape[headIndex], state, entrySide, maxBlockSteps);
+                cache.put(key, t);
+            }
+            else
+                ++cacheHits;
+
+            // Finish the run cell by cell when the block would pass the step limit
+            if(t.steps > maxSteps - stepCount)
+            {
+                t = runBlock(tape[headIndex], state, entrySide, maxSteps - stepCount);
+                t = new MacroTransition(t.block, t.exitDirection, t.exited, t.nextState, t.steps, t.halted, false, t.minCell, t.maxCell);
+            }
+
+            // Record how far into the outermost blocks the head has travelled
+            if(headIndex == leftIndex)
+                leftMinCell = Math.min(leftMinCell, t.minCell);
+            if(headIndex == rightIndex)
+                rightMaxCell = Math.max(rightMaxCell, t.maxCell);
+
+            tape[headIndex] = t.block;
+            stepCount += t.steps;
+            state = t.nextState;
+
+            if(t.looping)
+            {
+                runsForever = true;
+                return;
+            }
+            else if(!t.exited)
+                break;
+
+            // Move to the next block, entering from the opposite side, even on a halting transition so the block it moved into is defined
+            if(t.exitDirection == Tape.LEFT)
+            {
+                if(headIndex == leftIndex)
+                {
+                    if(leftIndex == 0)
+                        grow();
+
+                    --leftIndex;
+                    leftMinCell = blockSize - 1;
+                }
+
+                --headIndex;
+                entrySide = Tape.RIGHT;
+            }
+            else
+            {
+                if(headIndex == rightIndex)
+                {
+                    if(rightIndex == tape.length - 1)
+                        grow();
+
+                    ++rightIndex;
+                    rightMaxCell = 0;
+                }
+
+                ++headIndex;
+                entrySide = Tape.LEFT;
+            }
+        }
+
+        halted = state == State.HALTED;
+    }
+
+    public long sigma()
+    {
+        // Sigma is the number of defined nonzero symbols on the tape
+        long sigma = 0;
+        for(int i = leftIndex; i <= rightIndex; ++i)
+            for(int cell = 0; cell < blockSize; ++cell)
+                if(((tape[i] >>> (cell * bitsPerSymbol)) & symbolMask) != 0)
+                    ++sigma;
+
+        return sigma;
+    }
+
+    public long definedCount()
+    {
+        // Only the visited portion of the outermost blocks is counted
+        return (long)(rightIndex - leftIndex) * blockSize + rightMaxCell - leftMinCell + 1;
+    }
+}
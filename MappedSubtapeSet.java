@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class MappedSubtapeSet extends SubtapeSet
+{
+    // Keys and slots live in temporary files in the data directory, mapped 1GB at a time
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private FileChannel wordChannel;
+    private ByteBuffer[] wordSegments = new ByteBuffer[0];
+
+    private FileChannel slotChannel = null;
+    private ByteBuffer[] slotSegments;
+
+    MappedSubtapeSet(int wordsPerKey)
+    {
+        super(wordsPerKey, false);
+
+        try
+        {
+            wordChannel = openTempFile(".keys");
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        allocateSlots(mask + 1);
+    }
+
+    private static FileChannel openTempFile(String suffix) throws IOException
+    {
+        // The file is deleted as soon as its channel is closed, and the mappings stay valid until then
+        return FileChannel.open(Files.createTempFile(Paths.get(IO.dataPath), "subtapes", suffix),
+            StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long length) throws IOException
+    {
+        return channel.map(FileChannel.MapMode.READ_WRITE, position, length).order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    protected long readWord(long i)
+    {
+        long offset = i << 3;
+        return wordSegments[(int)(offset >>> SEGMENT_SHIFT)].getLong((int)(offset & SEGMENT_MASK));
+    }
+
+    @Override
+    protected void writeWord(long i, long value)
+    {
+        long offset = i << 3;
+        wordSegments[(int)(offset >>> SEGMENT_SHIFT)].putLong((int)(offset & SEGMENT_MASK), value);
+    }
+
+    @Override
+    protected void ensureWords(long count)
+    {
+        int segmentCount = (int)(((count << 3) + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        if(segmentCount <= wordSegments.length)
+            return;
+
+        // Mapping past the end of the file grows it, and untouched pages take no disk space
+        ByteBuffer[] segments = Arrays.copyOf(wordSegments, segmentCount);
+        try
+        {
+            for(int i = wordSegments.length; i < segmentCount; ++i)
+                segments[i] = map(wordChannel, (long)i << SEGMENT_SHIFT, 1L << SEGMENT_SHIFT);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        wordSegments = segments;
+    }
+
+    @Override
+    protected int readSlot(int slot)
+    {
+        long offset = (long)slot << 2;
+        return slotSegments[(int)(offset >>> SEGMENT_SHIFT)].getInt((int)(offset & SEGMENT_MASK));
+    }
+
+    @Override
+    protected void writeSlot(int slot, int value)
+    {
+        long offset = (long)slot << 2;
+        slotSegments[(int)(offset >>> SEGMENT_SHIFT)].putInt((int)(offset & SEGMENT_MASK), value);
+    }
+
+    @Override
+    protected void allocateSlots(int count)
+    {
+        // Every rehash starts a new zeroed file, and the old table is deleted
+        try
+        {
+            FileChannel channel = openTempFile(".slots");
+            long bytes = (long)count << 2;
+            ByteBuffer[] segments = new ByteBuffer[(int)((bytes + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+
+            for(int i = 0; i < segments.length; ++i)
+                segments[i] = map(channel, (long)i << SEGMENT_SHIFT, Math.min(1L << SEGMENT_SHIFT, bytes - ((long)i << SEGMENT_SHIFT)));
+
+            if(slotChannel != null)
+                slotChannel.close();
+
+            slotChannel = channel;
+            slotSegments = segments;
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        wordChannel.close();
+        slotChannel.close();
+        wordSegments = null;
+        slotSegments = null;
+    }
+}
@@ -64,12 +64,11 @@ public class ReverseBeaver
 
         // Convert the beaver by inverting the transitions
         for(int i = 0; i < states.length; ++i)
-        {
-            State curr = forward.states[i];
-
             for(byte symbol = 0; symbol < forward.symbolCount; ++symbol)
-                addStateTransition(i, symbol, curr.symbol[symbol], curr.dir[symbol], curr.targetState[symbol]);
-        }
+            {
+                int transition = forward.transitions[i * forward.symbolCount + symbol];
+                addStateTransition(i, symbol, State.packedSymbol(transition), State.packedDir(transition), State.packedTarget(transition));
+            }
         
         if(Beaver.logging)
             System.out.println("Reversed beaver");
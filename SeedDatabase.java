@@ -0,0 +1,187 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+
+public class SeedDatabase
+{
+    // The bbchallenge seed database is a 30 byte header followed by 30 byte records of BB(5) TMs
+    public static final int HEADER_SIZE = 30;
+    public static final int RECORD_SIZE = 30;
+    public static final int STATE_COUNT = 5;
+    public static final int SYMBOL_COUNT = 2;
+
+    // Maps are limited to 2GB, so the file is split into segments of whole records
+    private static final int RECORDS_PER_SEGMENT = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+
+    // Header values
+    public long undecidedTime;
+    public long undecidedSpace;
+    public long undecidedTotal;
+    public boolean sorted;
+
+    public long machineCount;
+    private MappedByteBuffer[] segments;
+
+    SeedDatabase(String fileName) throws IOException
+    {
+        try(FileChannel channel = FileChannel.open(Paths.get(IO.dataPath + fileName), StandardOpenOption.READ))
+        {
+            machineCount = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+            segments = new MappedByteBuffer[(int)((machineCount + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT)];
+
+            for(int i = 0; i < segments.length; ++i)
+            {
+                long first = (long)i * RECORDS_PER_SEGMENT;
+                long records = Math.min(RECORDS_PER_SEGMENT, machineCount - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * RECORD_SIZE, records * RECORD_SIZE);
+            }
+
+            // The header counts are stored as big endian unsigned ints
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            undecidedTime = Integer.toUnsignedLong(header.getInt(0));
+            undecidedSpace = Integer.toUnsignedLong(header.getInt(4));
+            undecidedTotal = Integer.toUnsignedLong(header.getInt(8));
+            sorted = header.get(12) != 0;
+        }
+    }
+
+    public void decode(long index, int[] transitions)
+    {
+        // Reads straight from the mapped file into the caller's table, so nothing is allocated
+        MappedByteBuffer segment = segments[(int)(index / RECORDS_PER_SEGMENT)];
+        int offset = (int)(index % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+
+        for(int i = 0; i < STATE_COUNT * SYMBOL_COUNT; ++i)
+        {
+            // Each transition is a write symbol, a move (0 = R, 1 = L) and a target state (1-5, or 0 if undefined)
+            byte write = segment.get(offset + i * 3);
+            boolean dir = segment.get(offset + i * 3 + 1) == 0 ? Tape.RIGHT : Tape.LEFT;
+            int target = segment.get(offset + i * 3 + 2) - 1;
+
+            // Undefined transitions halt, matching how Beaver parses "---"
+            if(target < 0)
+                transitions[i] = State.pack((byte)1, Tape.RIGHT, State.HALTED);
+            else
+                transitions[i] = State.pack(write, dir, target);
+        }
+    }
+
+    // Walks a range of records, decoding each one into the same table
+    public class Cursor
+    {
+        public long index;
+        public int[] transitions = new int[STATE_COUNT * SYMBOL_COUNT];
+        public long last;
+
+        private Cursor(long first, long last)
+        {
+            index = first - 1;
+            this.last = last;
+        }
+
+        public boolean next()
+        {
+            if(index >= last)
+                return false;
+
+            decode(++index, transitions);
+            return true;
+        }
+    }
+
+    public Cursor range(long first, long last)
+    {
+        // The range is inclusive, and a negative or oversized last index runs to the end of the database
+        if(first < 0 || first >= machineCount)
+            throw new IllegalArgumentException("First index " + first + " is outside the database of " + machineCount + " TMs.");
+
+        if(last < 0 || last >= machineCount)
+            last = machineCount - 1;
+
+        return new Cursor(first, last);
+    }
+
+    public static String beaverString(int[] transitions)
+    {
+        // Only needed when a TM is written out, as every tool can run straight from the table
+        String tm = TNFEnumerator.toTMString(transitions, SYMBOL_COUNT);
+        return tm.replace("1RZ", "---");
+    }
+
+    public String beaverString(long index)
+    {
+        int[] transitions = new int[STATE_COUNT * SYMBOL_COUNT];
+        decode(index, transitions);
+
+        return beaverString(transitions);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        String databaseFile;
+        long first = 0;
+        long last = -1;
+        long maxSteps = 1000;
+        int window = 1 << 12;
+
+        // Get command line arguments
+        try
+        {
+            databaseFile = args[0];
+
+            if(args.length > 1)
+                first = Long.parseLong(args[1]);
+
+            if(args.length > 2)
+                last = Long.parseLong(args[2]);
+
+            if(args.length > 3)
+                maxSteps = Long.parseLong(args[3]);
+
+            if(args.length > 4)
+                window = Integer.parseInt(args[4]);
+        }
+        catch(Exception e)
+        {
+            System.out.println("Invalid arguments. Use the following command:");
+            System.out.println("java SeedDatabase <Database file> [<First index> [<Last index> [<Max steps> [<Window>]]]]");
+            System.out.println("Example: java SeedDatabase all_5_states_undecided_machines_with_global_header 0 999999 1000");
+            return;
+        }
+
+        SeedDatabase db = new SeedDatabase(databaseFile);
+        Cursor cursor = db.range(first, last);
+
+        System.out.println(db.machineCount + " TMs in the database, screening TMs " + first + " to " + cursor.last + ".");
+
+        // Screen the range in lockstep chunks, reusing the same table and lockstep arrays for every chunk
+        int chunkSize = 1024;
+        LockstepBeavers lockstep = new LockstepBeavers(chunkSize, window);
+        long[] counts = new long[3];
+
+        Instant start = Instant.now();
+
+        boolean more = true;
+        while(more)
+        {
+            lockstep.clear();
+
+            while(lockstep.count < chunkSize && (more = cursor.next()))
+                lockstep.add(cursor.transitions, SYMBOL_COUNT, 0);
+
+            lockstep.run(maxSteps);
+
+            for(int m = 0; m < lockstep.count; ++m)
+                ++counts[lockstep.status[m]];
+        }
+
+        Instant end = Instant.now();
+
+        System.out.println(counts[LockstepBeavers.HALTED] + " halted, " + counts[LockstepBeavers.OUT_OF_WINDOW] + " left the window, and " + counts[LockstepBeavers.RUNNING] + " reached the step limit.");
+        System.out.println(Duration.between(start, end));
+    }
+}
@@ -21,6 +21,31 @@ public class State
             return (char)(stateIn + 'A');
     }
 
+    // Packed transitions hold the write symbol in bits 0-7, the direction in bit 8 and the target state in the remaining bits
+    private static final int DIRECTION_BIT = 1 << 8;
+    private static final int TARGET_SHIFT = 9;
+
+    public static int pack(byte symbol, boolean dir, int targetState)
+    {
+        return (targetState << TARGET_SHIFT) | (dir == Tape.LEFT ? DIRECTION_BIT : 0) | (symbol & 0xFF);
+    }
+
+    public static byte packedSymbol(int transition)
+    {
+        return (byte)transition;
+    }
+
+    public static boolean packedDir(int transition)
+    {
+        return (transition & DIRECTION_BIT) != 0 ? Tape.LEFT : Tape.RIGHT;
+    }
+
+    public static int packedTarget(int transition)
+    {
+        // The arithmetic shift keeps State.HALTED negative
+        return transition >> TARGET_SHIFT;
+    }
+
     public int state;
     public byte[] symbol;
     public boolean[] dir;
@@ -34,6 +59,10 @@ public class State
         
         state = s;
 
+        // Every state needs a write symbol, a direction and a target state for each symbol
+        if(stateChanges.length() != symbolCount * 3)
+            throw new IllegalArgumentException("State " + stateToChar(s) + " has " + stateChanges.length() + " characters (" + stateChanges + ") but a " + symbolCount + " symbol beaver needs " + (symbolCount * 3) + " per state.");
+
         int strIndex = 0;
         for(int i = 0; i < symbolCount; ++i)
         {
@@ -41,6 +70,9 @@ public class State
             symbol[i] = Symbol.charToSymbol(stateChanges.charAt(strIndex++));
             dir[i] = Tape.charToDirection(stateChanges.charAt(strIndex++));
             targetState[i] = charToState(stateChanges.charAt(strIndex++));
+
+            if(symbol[i] >= symbolCount)
+                throw new IllegalArgumentException("State " + stateToChar(s) + " writes symbol " + symbol[i] + " but the beaver only has " + symbolCount + " symbols.");
         }
     }
 }
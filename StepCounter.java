@@ -0,0 +1,139 @@
+import java.math.BigInteger;
+
+public class StepCounter implements Comparable<StepCounter>
+{
+    // Steps are counted in a long, and only switch to a BigInteger once the long would overflow
+    private long count = 0;
+    private BigInteger bigCount = null;
+
+    StepCounter() { }
+
+    StepCounter(long steps)
+    {
+        count = steps;
+    }
+
+    StepCounter(BigInteger steps)
+    {
+        if(steps.bitLength() < Long.SIZE)
+            count = steps.longValue();
+        else
+            bigCount = steps;
+    }
+
+    public static long toLongBound(BigInteger bound)
+    {
+        // Bounds too large for a long are saturated, as no run can count that high one step at a time
+        if(bound.bitLength() < Long.SIZE)
+            return bound.longValue();
+
+        return Long.MAX_VALUE;
+    }
+
+    public void increment()
+    {
+        add(1);
+    }
+
+    public void add(long steps)
+    {
+        if(bigCount == null)
+        {
+            long result = count + steps;
+
+            // Overflow occurred if the result has a different sign than both inputs
+            if(((count ^ result) & (steps ^ result)) >= 0)
+            {
+                count = result;
+                return;
+            }
+
+            bigCount = BigInteger.valueOf(count);
+        }
+
+        bigCount = bigCount.add(BigInteger.valueOf(steps));
+    }
+
+    public void add(StepCounter steps)
+    {
+        if(steps.bigCount == null)
+            add(steps.count);
+        else
+            bigCount = bigIntegerValue().add(steps.bigCount);
+    }
+
+    public boolean isLong()
+    {
+        return bigCount == null;
+    }
+
+    public long longValue()
+    {
+        if(bigCount != null)
+            throw new ArithmeticException("Step count " + bigCount + " does not fit in a long");
+
+        return count;
+    }
+
+    public BigInteger bigIntegerValue()
+    {
+        if(bigCount != null)
+            return bigCount;
+
+        return BigInteger.valueOf(count);
+    }
+
+    public boolean reached(StepCounter bound)
+    {
+        // Compare as longs whenever possible
+        if(bigCount == null && bound.bigCount == null)
+            return count >= bound.count;
+
+        return compareTo(bound) >= 0;
+    }
+
+    public long remainingUntil(StepCounter bound)
+    {
+        // Counts are never negative, so the long difference cannot overflow
+        if(bigCount == null && bound.bigCount == null)
+            return Math.max(bound.count - count, 0);
+
+        return toLongBound(bound.bigIntegerValue().subtract(bigIntegerValue()).max(BigInteger.ZERO));
+    }
+
+    @Override
+    public int compareTo(StepCounter other)
+    {
+        if(bigCount == null && other.bigCount == null)
+            return Long.compare(count, other.count);
+
+        return bigIntegerValue().compareTo(other.bigIntegerValue());
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if(this == obj)
+            return true;
+
+        if(!(obj instanceof StepCounter))
+            return false;
+
+        return compareTo((StepCounter)obj) == 0;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return bigIntegerValue().hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        if(bigCount != null)
+            return bigCount.toString();
+
+        return Long.toString(count);
+    }
+}
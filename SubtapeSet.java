@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+public class SubtapeSet
+{
+    // Keys are fixed-width runs of longs, stored back to back in insertion order
+    public int wordsPerKey;
+    private long[] words;
+    protected int size = 0;
+
+    // Open-addressing table of key index + 1, where 0 marks an empty slot
+    private int[] slots;
+    protected int mask;
+
+    // The slot count doubles as an int, so the table stops at 2^30 slots, or about 805 million keys
+    private static final int MAX_SLOTS = 1 << 30;
+    private static final long MAX_WORDS = Integer.MAX_VALUE - 8;
+
+    SubtapeSet(int wordsPerKey)
+    {
+        this(wordsPerKey, true);
+    }
+
+    // Subclasses that override the storage hooks skip the heap arrays, and allocate their own slots for the starting mask
+    protected SubtapeSet(int wordsPerKey, boolean heapStorage)
+    {
+        this.wordsPerKey = wordsPerKey;
+        mask = 2047;
+
+        if(heapStorage)
+        {
+            words = new long[wordsPerKey * 1024];
+            slots = new int[mask + 1];
+        }
+    }
+
+    // Storage hooks, overridden by MappedSubtapeSet to keep the keys and slots off the heap
+    protected long readWord(long i)
+    {
+        return words[(int)i];
+    }
+
+    protected void writeWord(long i, long value)
+    {
+        words[(int)i] = value;
+    }
+
+    protected void ensureWords(long count)
+    {
+        if(count > MAX_WORDS)
+            throw full();
+
+        if(count > words.length)
+            words = Arrays.copyOf(words, (int)Math.min(MAX_WORDS, Math.max(count, words.length * 3L / 2)));
+    }
+
+    protected int readSlot(int slot)
+    {
+        return slots[slot];
+    }
+
+    protected void writeSlot(int slot, int value)
+    {
+        slots[slot] = value;
+    }
+
+    protected void allocateSlots(int count)
+    {
+        slots = new int[count];
+    }
+
+    public void close() throws IOException { }
+
+    protected IllegalStateException full()
+    {
+        return new IllegalStateException("Subtape set full at " + size + " keys of " + wordsPerKey + " words.");
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public void get(int index, long[] key)
+    {
+        long offset = (long)index * wordsPerKey;
+        for(int i = 0; i < wordsPerKey; ++i)
+            key[i] = readWord(offset + i);
+    }
+
+    public long word(int index, int word)
+    {
+        return readWord((long)index * wordsPerKey + word);
+    }
+
+    private static int hash(long[] key)
+    {
+        long h = 0;
+        for(long word : key)
+            h = (h + word) * 0x9E3779B97F4A7C15L;
+
+        return (int)(h ^ (h >>> 32));
+    }
+
+    private int storedHash(int index)
+    {
+        long h = 0;
+        long offset = (long)index * wordsPerKey;
+        for(int i = 0; i < wordsPerKey; ++i)
+            h = (h + readWord(offset + i)) * 0x9E3779B97F4A7C15L;
+
+        return (int)(h ^ (h >>> 32));
+    }
+
+    private boolean keyEquals(int index, long[] key)
+    {
+        long offset = (long)index * wordsPerKey;
+        for(int i = 0; i < wordsPerKey; ++i)
+            if(readWord(offset + i) != key[i])
+                return false;
+
+        return true;
+    }
+
+    public boolean contains(long[] key)
+    {
+        // Safe to call from several threads as long as no thread is adding
+        return indexOf(key) >= 0;
+    }
+
+    public int indexOf(long[] key)
+    {
+        // Returns the index of the key, or -1 if it is not in the set
+        int slot = hash(key) & mask;
+        while(readSlot(slot) != 0)
+        {
+            if(keyEquals(readSlot(slot) - 1, key))
+                return readSlot(slot) - 1;
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    public int add(long[] key)
+    {
+        // Returns the index of the new key, or -1 if it was already in the set
+        int slot = hash(key) & mask;
+        while(readSlot(slot) != 0)
+        {
+            if(keyEquals(readSlot(slot) - 1, key))
+                return -1;
+
+            slot = (slot + 1) & mask;
+        }
+
+        // Check the table before writing, so a full set is left unchanged
+        if((size + 1L) * 4 > (mask + 1L) * 3 && mask + 1 == MAX_SLOTS)
+            throw full();
+
+        long offset = (long)size * wordsPerKey;
+        ensureWords(offset + wordsPerKey);
+        for(int i = 0; i < wordsPerKey; ++i)
+            writeWord(offset + i, key[i]);
+
+        writeSlot(slot, ++size);
+
+        // Keep the table at most 3/4 full so probe runs stay short
+        if(size * 4L > (mask + 1L) * 3L)
+            rehash();
+
+        return size - 1;
+    }
+
+    private void rehash()
+    {
+        allocateSlots((mask + 1) * 2);
+        mask = mask * 2 + 1;
+
+        // Keys are never removed, so every key can be placed without comparing
+        for(int index = 0; index < size; ++index)
+        {
+            int slot = storedHash(index) & mask;
+            while(readSlot(slot) != 0)
+                slot = (slot + 1) & mask;
+
+            writeSlot(slot, index + 1);
+        }
+    }
+}
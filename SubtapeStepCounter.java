@@ -5,6 +5,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.Scanner;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -19,18 +20,19 @@ public class SubtapeStepCounter
     private Beaver beaver;
     public int subtapeLength;
     public int haltCount = 0;
-    public BigInteger loopSteps = BigInteger.ZERO;
+    public long loopSteps = 0;
     public int finishCount = 0;
     public BigInteger maxPossibleSteps;
-    public BigInteger totalSteps = BigInteger.ZERO;
+    public long maxStepBound;
+    public long totalSteps = 0;
     Stack<TapeState> tapeStack = new Stack<>();
 
-    public BigInteger maxSteps = BigInteger.ZERO;
+    public long maxSteps = 0;
 
     public class Subtape
     {
         byte[] tape;
-        BigInteger steps = BigInteger.valueOf(0);
+        long steps = 0;
         boolean halted = false;
         boolean looping = false;
 
@@ -58,7 +60,7 @@ public class SubtapeStepCounter
                     halted = true;
                     break;
                 }
-                else if(steps.compareTo(maxPossibleSteps) >= 0)
+                else if(steps >= maxStepBound)
                 {
                     looping = true;
                     break;
@@ -69,17 +71,18 @@ public class SubtapeStepCounter
                 if(currSymbol == Symbol.UNDEFINED)
                     return new TapeState(this, headIndex, state, true);
 
-                tape[headIndex] = beaver.states[state].symbol[currSymbol];
+                int transition = beaver.transitions[state * beaver.symbolCount + currSymbol];
+                tape[headIndex] = State.packedSymbol(transition);
 
                 // Move to the next state
-                steps = steps.add(BigInteger.ONE);
-                totalSteps = totalSteps.add(BigInteger.ONE);
-                if(beaver.states[state].dir[currSymbol] == Tape.LEFT)
+                ++steps;
+                ++totalSteps;
+                if(State.packedDir(transition) == Tape.LEFT)
                     --headIndex;
                 else
                     ++headIndex;
 
-                state = beaver.states[state].targetState[currSymbol];
+                state = State.packedTarget(transition);
             }
 
             return new TapeState(this, headIndex, state, false);
@@ -122,34 +125,35 @@ public class SubtapeStepCounter
                 if(currSymbol == Symbol.UNDEFINED)
                     return new TapeState(this, headIndex, state, true);
 
-                tape[headIndex] = beaver.states[state].symbol[currSymbol];
+                int transition = beaver.transitions[state * beaver.symbolCount + currSymbol];
+                tape[headIndex] = State.packedSymbol(transition);
 
                 // Move to the next state
                 ++detectionSteps;
-                steps = steps.add(BigInteger.ONE);
-                totalSteps = totalSteps.add(BigInteger.ONE);
-                if(beaver.states[state].dir[currSymbol] == Tape.LEFT)
+                ++steps;
+                ++totalSteps;
+                if(State.packedDir(transition) == Tape.LEFT)
                     --headIndex;
                 else
                     ++headIndex;
 
-                state = beaver.states[state].targetState[currSymbol];
+                state = State.packedTarget(transition);
 
                 // Progress the detection tape every other step
                 if(detectionSteps % 2 == 1)
                 {
                     // Read and update the tape
-                    byte detectionCurrSymbol = detectionTape[detectionHeadIndex];
+                    int detectionTransition = beaver.transitions[detectionState * beaver.symbolCount + detectionTape[detectionHeadIndex]];
 
-                    detectionTape[detectionHeadIndex] = beaver.states[detectionState].symbol[detectionCurrSymbol];
+                    detectionTape[detectionHeadIndex] = State.packedSymbol(detectionTransition);
 
                     // Move to the next state
-                    if(beaver.states[detectionState].dir[detectionCurrSymbol] == Tape.LEFT)
+                    if(State.packedDir(detectionTransition) == Tape.LEFT)
                         --detectionHeadIndex;
                     else
                         ++detectionHeadIndex;
 
-                    detectionState = beaver.states[detectionState].targetState[detectionCurrSymbol];
+                    detectionState = State.packedTarget(detectionTransition);
                 }
             }
 
@@ -175,6 +179,7 @@ public class SubtapeStepCounter
 
         // Set a maximum to prevent loops
         maxPossibleSteps = Utility.TheoreticalMaxSteps(b.states.length, b.symbolCount, subtapeLength);
+        maxStepBound = StepCounter.toLongBound(maxPossibleSteps);
 
         // Create root subtapes
         Subtape leftTape = new Subtape(Symbol.UNDEFINED);
@@ -195,12 +200,12 @@ public class SubtapeStepCounter
         }
     }
 
-    private void addSubtape(Subtape newTape, BigInteger startSteps)
+    private void addSubtape(Subtape newTape, long startSteps)
     {
         // Do not add looping tapes
         if(newTape.looping)
         {
-            loopSteps = loopSteps.add(newTape.steps).subtract(startSteps);
+            loopSteps += newTape.steps - startSteps;
             return;
         }
 
@@ -210,7 +215,7 @@ public class SubtapeStepCounter
         ++finishCount;
         
         // Record the max steps taken within a tape of this size
-        if(newTape.steps.compareTo(maxSteps) > 0)
+        if(newTape.steps > maxSteps)
         {
             maxSteps = newTape.steps;
         }
@@ -223,7 +228,7 @@ public class SubtapeStepCounter
             // Get the next partial tape
             TapeState ts = tapeStack.peek();
             Subtape s = new Subtape(ts.tape);
-            BigInteger currSteps = s.steps;
+            long currSteps = s.steps;
 
             // Push the next variant onto the stack (except for special start states)
             if(ts.isPartial && ts.tape.tape[ts.head] < beaver.symbolCount - 1)
@@ -247,57 +252,56 @@ public class SubtapeStepCounter
         }
     }
 
-    public record SessionResults(BigInteger maxSteps, String maxBeaver, int ties, BigInteger totalSteps, BigInteger loopSteps) { }
-    private static SessionResults calcBeaversMaxSteps(ConcurrentLinkedQueue<String> beavers, int tapeLength)
+    public record SessionResults(long maxSteps, String maxBeaver, int ties) { }
+    private static SessionResults calcBeaversMaxSteps(ConcurrentLinkedQueue<Canonicalizer.BeaverClass> beavers, int tapeLength, LongAdder totalSteps, LongAdder loopSteps)
     {
         int sessionTies = 0;
-        BigInteger sessionMaxSteps = BigInteger.ZERO;
+        long sessionMaxSteps = 0;
         String sessionMaxBeaver = null;
-        BigInteger totalSteps = BigInteger.ZERO;
-        BigInteger loopSteps = BigInteger.ZERO;
         
-        String beaver;
-        while((beaver = beavers.poll()) != null)
+        // Only the first member of each class is run, and its result counts for every member
+        Canonicalizer.BeaverClass beaverClass;
+        while((beaverClass = beavers.poll()) != null)
         {
+            String beaver = beaverClass.members().get(0);
+            int classSize = beaverClass.members().size();
             Beaver b = new Beaver(beaver);
 
             // Run the beaver on all possible subtapes
             SubtapeStepCounter es = new SubtapeStepCounter(b, tapeLength);
             es.evaluateSubtapes();
 
-            totalSteps = totalSteps.add(es.totalSteps);
-            loopSteps = loopSteps.add(es.loopSteps);
+            // Totals are shared between threads, so they are only updated once per class, weighted like the max step ties
+            totalSteps.add(es.totalSteps * classSize);
+            loopSteps.add(es.loopSteps * classSize);
 
             // Test if the current max is better than the new results
-            int comp = es.maxSteps.compareTo(sessionMaxSteps);
-            if(comp > 0)
+            if(es.maxSteps > sessionMaxSteps)
             {
                 sessionMaxSteps = es.maxSteps;
                 sessionMaxBeaver = beaver;
-                sessionTies = 0;
+                sessionTies = classSize - 1;
             }
-            else if(comp == 0)
-                ++sessionTies;
+            else if(es.maxSteps == sessionMaxSteps)
+                sessionTies += classSize;
         }
 
-        return new SessionResults(sessionMaxSteps, sessionMaxBeaver, sessionTies, totalSteps, loopSteps);
+        return new SessionResults(sessionMaxSteps, sessionMaxBeaver, sessionTies);
     }
 
 
-    private static SessionResults runMultithreaded(ConcurrentLinkedQueue<String> beavers, int tapeLength, int poolSize)
+    private static SessionResults runMultithreaded(ConcurrentLinkedQueue<Canonicalizer.BeaverClass> beavers, int tapeLength, int poolSize, LongAdder totalSteps, LongAdder loopSteps)
     {
         ExecutorService e = Executors.newFixedThreadPool(poolSize);
         List<Future<SessionResults>> results = new ArrayList<Future<SessionResults>>();
 
         // Spin up threads
         for(int i = 0; i < poolSize; ++i)
-            results.add(e.submit(() -> calcBeaversMaxSteps(beavers, tapeLength)));
+            results.add(e.submit(() -> calcBeaversMaxSteps(beavers, tapeLength, totalSteps, loopSteps)));
 
         int sessionTies = 0;
-        BigInteger sessionMaxSteps = BigInteger.ZERO;
+        long sessionMaxSteps = 0;
         String sessionMaxBeaver = null;
-        BigInteger totalSteps = BigInteger.ZERO;
-        BigInteger loopSteps = BigInteger.ZERO;
 
         // Aggregate stats
         for(Future<SessionResults> result : results)
@@ -306,18 +310,14 @@ public class SubtapeStepCounter
             {
                 SessionResults r = result.get();
 
-                totalSteps = totalSteps.add(r.totalSteps);
-                loopSteps = loopSteps.add(r.loopSteps);
-
                 // Test if the current max is better than the new results
-                int comp = r.maxSteps.compareTo(sessionMaxSteps);
-                if(comp > 0)
+                if(r.maxSteps > sessionMaxSteps)
                 {
                     sessionMaxSteps = r.maxSteps;
                     sessionMaxBeaver = r.maxBeaver;
                     sessionTies = r.ties;
                 }
-                else if(comp == 0)
+                else if(r.maxSteps == sessionMaxSteps)
                     sessionTies += r.ties + 1;
             }
             catch(Exception error) { }
@@ -325,7 +325,7 @@ public class SubtapeStepCounter
 
         e.shutdownNow();
 
-        return new SessionResults(sessionMaxSteps, sessionMaxBeaver, sessionTies, totalSteps, loopSteps);
+        return new SessionResults(sessionMaxSteps, sessionMaxBeaver, sessionTies);
     }
 
     private static List<String> GetBeaverList(String filePath, String filter) throws FileNotFoundException
@@ -359,28 +359,27 @@ public class SubtapeStepCounter
         int minTapeToMultithread = 6;
         int poolSize = 8;
 
-        BigInteger totalSteps = BigInteger.ZERO;
-        BigInteger loopSteps = BigInteger.ZERO;
+        LongAdder totalSteps = new LongAdder();
+        LongAdder loopSteps = new LongAdder();
+
+        // Isomorphic TMs take the same number of steps, so only one TM per class is run
+        List<Canonicalizer.BeaverClass> beaverClasses = Canonicalizer.groupClasses(beavers);
         
         for(int tapeLength = lengthOfSmallestSubtape; tapeLength < lengthOfLargestSubtape + 1; ++tapeLength)
         {
-            ConcurrentLinkedQueue<String> b = new ConcurrentLinkedQueue<String>(beavers);
+            ConcurrentLinkedQueue<Canonicalizer.BeaverClass> b = new ConcurrentLinkedQueue<Canonicalizer.BeaverClass>(beaverClasses);
             SessionResults results;
 
             Instant startTime = Instant.now();
 
             // Calculate the steps for each beaver
             if(multithreaded && tapeLength > minTapeToMultithread)
-                results = runMultithreaded(b, tapeLength, poolSize);
+                results = runMultithreaded(b, tapeLength, poolSize, totalSteps, loopSteps);
             else
-                results = calcBeaversMaxSteps(b, tapeLength);
+                results = calcBeaversMaxSteps(b, tapeLength, totalSteps, loopSteps);
 
             Instant endTime = Instant.now();
 
-            // Record stats for calculating how many steps were in loops
-            totalSteps = totalSteps.add(results.totalSteps);
-            loopSteps = loopSteps.add(results.loopSteps);
-
             // Use the first beaver to get the max theoretical steps (assumes all tested beavers are the same size)
             BigInteger maxTheoreticalSteps = Utility.TheoreticalMaxSteps(new Beaver(beavers.get(0)).states.length, new Beaver(beavers.get(0)).symbolCount, tapeLength);
 
@@ -399,9 +398,9 @@ public class SubtapeStepCounter
             }
         }
 
-        double percentLoopSteps = loopSteps.multiply(BigInteger.valueOf(1000)).divide(totalSteps).doubleValue() / 10.0;
+        double percentLoopSteps = BigInteger.valueOf(loopSteps.sum()).multiply(BigInteger.valueOf(1000)).divide(BigInteger.valueOf(totalSteps.sum())).doubleValue() / 10.0;
 
-        System.out.println("A total of " + (totalSteps.divide(BigInteger.valueOf(100000000l)).intValue() / 10.0) + " billion steps were calculated.");
+        System.out.println("A total of " + (totalSteps.sum() / 100000000l / 10.0) + " billion steps were calculated.");
         System.out.println("Approximately " + percentLoopSteps + "% of the steps were performed in loops.");
     }
 }
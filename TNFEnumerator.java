@@ -0,0 +1,323 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+
+public class TNFEnumerator
+{
+    // Marks a transition that has not been reached yet
+    public static final int UNDEFINED = Integer.MIN_VALUE;
+
+    public static final byte HALTED = 0;
+    public static final byte STEP_LIMIT = 1;
+    public static final byte SPACE_LIMIT = 2;
+
+    // A machine the enumeration stopped on. The transition array is reused, so sinks must copy it to keep it.
+    public record Leaf(int[] transitions, int symbolCount, byte status, long steps, long sigma) { }
+
+    // Receives every leaf as soon as it is found, so the enumeration never has to be stored
+    public interface Sink
+    {
+        void accept(Leaf leaf);
+    }
+
+    public int stateCount;
+    public int symbolCount;
+    public long maxSteps;
+    public int maxCells;
+    private Sink sink;
+
+    // Simulation state, restored from a snapshot for every child
+    private int[] transitions;
+    private byte[] tape = new byte[256];
+    private int head;
+    private int left;
+    private int right;
+    private int state;
+    private long steps;
+    private int usedStates;
+    private int usedSymbols;
+
+    // Statistics
+    public long leafCount = 0;
+    public long nonHaltingCount = 0;
+
+    // Copy of the simulation at the first undefined transition, shared by all children
+    private class Snapshot
+    {
+        int[] transitions;
+        byte[] cells;
+        int headOffset;
+        int state;
+        long steps;
+        int usedStates;
+        int usedSymbols;
+
+        Snapshot()
+        {
+            transitions = TNFEnumerator.this.transitions.clone();
+            cells = Arrays.copyOfRange(tape, left, right + 1);
+            headOffset = head - left;
+            state = TNFEnumerator.this.state;
+            steps = TNFEnumerator.this.steps;
+            usedStates = TNFEnumerator.this.usedStates;
+            usedSymbols = TNFEnumerator.this.usedSymbols;
+        }
+
+        void restore()
+        {
+            System.arraycopy(this.transitions, 0, TNFEnumerator.this.transitions, 0, this.transitions.length);
+
+            // Only the visited cells need to be reset, the rest of the tape is still blank
+            Arrays.fill(tape, left, right + 1, Symbol.ZERO);
+            left = (tape.length - cells.length) / 2;
+            right = left + cells.length - 1;
+            head = left + headOffset;
+            System.arraycopy(cells, 0, tape, left, cells.length);
+
+            TNFEnumerator.this.state = state;
+            TNFEnumerator.this.steps = steps;
+            TNFEnumerator.this.usedStates = usedStates;
+            TNFEnumerator.this.usedSymbols = usedSymbols;
+        }
+    }
+
+    TNFEnumerator(int stateCount, int symbolCount, long maxSteps, int maxCells, Sink sink)
+    {
+        this.stateCount = stateCount;
+        this.symbolCount = symbolCount;
+        this.maxSteps = maxSteps;
+        this.maxCells = maxCells;
+        this.sink = sink;
+    }
+
+    public void enumerate()
+    {
+        transitions = new int[stateCount * symbolCount];
+        Arrays.fill(transitions, UNDEFINED);
+        Arrays.fill(tape, Symbol.ZERO);
+        head = left = right = tape.length / 2;
+        state = 0;
+        steps = 0;
+        usedStates = 1;
+        usedSymbols = 1;
+
+        // Every machine in Tree Normal Form starts with A0 = 1RB, unless it only has one state
+        if(stateCount > 1)
+        {
+            transitions[0] = State.pack((byte)Math.min(1, symbolCount - 1), Tape.RIGHT, 1);
+            usedStates = 2;
+            usedSymbols = Math.min(2, symbolCount);
+        }
+
+        explore();
+    }
+
+    private void grow()
+    {
+        // Double the capacity, splitting the new space between both ends of the tape
+        int shift = tape.length / 2;
+        byte[] newTape = new byte[tape.length * 2];
+        System.arraycopy(tape, left, newTape, left + shift, right - left + 1);
+
+        tape = newTape;
+        head += shift;
+        left += shift;
+        right += shift;
+    }
+
+    private int simulate()
+    {
+        // Run until an undefined transition is read, and return its index
+        while(steps < maxSteps)
+        {
+            int index = state * symbolCount + tape[head];
+            int transition = transitions[index];
+
+            if(transition == UNDEFINED)
+                return index;
+
+            tape[head] = State.packedSymbol(transition);
+            head += State.packedDir(transition) == Tape.LEFT ? -1 : 1;
+            state = State.packedTarget(transition);
+            ++steps;
+
+            if(head < left || head > right)
+            {
+                if(right - left + 1 >= maxCells)
+                {
+                    emit(SPACE_LIMIT);
+                    return -1;
+                }
+
+                if(head < 0 || head >= tape.length)
+                    grow();
+
+                left = Math.min(left, head);
+                right = Math.max(right, head);
+            }
+        }
+
+        emit(STEP_LIMIT);
+        return -1;
+    }
+
+    private long sigma()
+    {
+        long sigma = 0;
+        for(int i = left; i <= right; ++i)
+            if(tape[i] != Symbol.ZERO)
+                ++sigma;
+
+        return sigma;
+    }
+
+    private void emit(byte status)
+    {
+        ++leafCount;
+        sink.accept(new Leaf(transitions, symbolCount, status, steps, sigma()));
+    }
+
+    private void explore()
+    {
+        int index = simulate();
+        if(index < 0)
+            return;
+
+        // The halting child takes one more step, writing a 1 like the 1RZ convention
+        byte read = tape[head];
+        byte haltSymbol = (byte)Math.min(1, symbolCount - 1);
+        transitions[index] = State.pack(haltSymbol, Tape.RIGHT, State.HALTED);
+        tape[head] = haltSymbol;
+        ++steps;
+        emit(HALTED);
+        --steps;
+        tape[head] = read;
+        transitions[index] = UNDEFINED;
+
+        // Children that define the last transition can never halt
+        int undefinedCount = 0;
+        for(int transition : transitions)
+            if(transition == UNDEFINED)
+                ++undefinedCount;
+
+        if(undefinedCount == 1)
+        {
+            nonHaltingCount += (long)Math.min(usedSymbols + 1, symbolCount) * 2 * Math.min(usedStates + 1, stateCount);
+            return;
+        }
+
+        Snapshot snapshot = new Snapshot();
+
+        // Tree Normal Form only allows the next unused state and symbol to be introduced
+        for(int symbol = 0; symbol < Math.min(usedSymbols + 1, symbolCount); ++symbol)
+            for(int dir = 0; dir < 2; ++dir)
+                for(int target = 0; target < Math.min(usedStates + 1, stateCount); ++target)
+                {
+                    snapshot.restore();
+                    transitions[index] = State.pack((byte)symbol, dir == 0 ? Tape.RIGHT : Tape.LEFT, target);
+                    usedSymbols = Math.max(usedSymbols, symbol + 1);
+                    usedStates = Math.max(usedStates, target + 1);
+                    explore();
+                }
+    }
+
+    public static String toTMString(int[] transitions, int symbolCount)
+    {
+        StringBuilder s = new StringBuilder();
+
+        for(int i = 0; i < transitions.length; ++i)
+        {
+            if(i > 0 && i % symbolCount == 0)
+                s.append('_');
+
+            int t = transitions[i];
+            if(t == UNDEFINED)
+                s.append("---");
+            else
+            {
+                s.append(Symbol.symbolToChar(State.packedSymbol(t)));
+                s.append(Tape.directionToChar(State.packedDir(t)));
+                s.append(State.packedTarget(t) == State.HALTED ? 'Z' : State.stateToChar(State.packedTarget(t)));
+            }
+        }
+
+        return s.toString();
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        int stateCount;
+        int symbolCount;
+        long maxSteps;
+        String outputFileName = null;
+        int maxCells = 1 << 16;
+
+        // Get command line arguments
+        try
+        {
+            stateCount = Integer.parseInt(args[0]);
+            symbolCount = Integer.parseInt(args[1]);
+            maxSteps = Long.parseLong(args[2]);
+
+            if(args.length > 3)
+                outputFileName = args[3];
+
+            if(args.length > 4)
+                maxCells = Integer.parseInt(args[4]);
+        }
+        catch(Exception e)
+        {
+            System.out.println("Invalid arguments. Use the following command:");
+            System.out.println("java TNFEnumerator <States> <Symbols> <Max steps> [<Undecided TM list file> [<Max cells>]]");
+            System.out.println("Example: java TNFEnumerator 4 2 1000 holdouts.txt");
+            return;
+        }
+
+        // Track the champions, and optionally stream the undecided machines to a list file
+        long[] counts = new long[3];
+        Leaf[] champion = new Leaf[1];
+        String[] championString = new String[1];
+        Writer out = outputFileName == null ? null : new BufferedWriter(new FileWriter(IO.dataPath + outputFileName));
+
+        Sink sink = leaf ->
+        {
+            ++counts[leaf.status()];
+
+            if(leaf.status() == HALTED && (champion[0] == null || leaf.steps() > champion[0].steps()))
+            {
+                champion[0] = leaf;
+                championString[0] = toTMString(leaf.transitions(), leaf.symbolCount());
+            }
+            else if(leaf.status() != HALTED && out != null)
+            {
+                try
+                {
+                    out.write(toTMString(leaf.transitions(), leaf.symbolCount()) + System.lineSeparator());
+                }
+                catch(IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+
+        Instant start = Instant.now();
+        TNFEnumerator enumerator = new TNFEnumerator(stateCount, symbolCount, maxSteps, maxCells, sink);
+        enumerator.enumerate();
+        Instant end = Instant.now();
+
+        if(out != null)
+            out.close();
+
+        System.out.println("Enumerated " + enumerator.leafCount + " BB(" + stateCount + "," + symbolCount + ") TMs in " + Duration.between(start, end));
+        System.out.println(counts[HALTED] + " halted, " + counts[STEP_LIMIT] + " reached the step limit, " + counts[SPACE_LIMIT] + " reached the cell limit, and " + enumerator.nonHaltingCount + " had no halting transition left.");
+
+        if(champion[0] != null)
+            System.out.println("Longest halting TM: " + championString[0] + " with " + champion[0].steps() + " steps and sigma " + champion[0].sigma());
+    }
+}
@@ -1,5 +1,5 @@
 
-public class Tape
+public class Tape implements TapeRenderer.Cells
 {
     public static final boolean LEFT = true;
     public static final boolean RIGHT = !LEFT;
@@ -59,6 +59,10 @@ public class Tape
     public int symbolZeroCount = 0;
     public int definedCount = 0;
 
+    // Last cell read by cellAt()
+    private Node cursor;
+    private int cursorIndex;
+
     // Default symbol allows for alternative tapes, including reverse tapes
     protected byte defaultSymbol = Symbol.ZERO;
 
@@ -162,66 +166,48 @@ public class Tape
         return head.right.item;
     }
 
-    // Does not currently handle patterns of symbols
-    public static String compressString(String s)
+    public int cellCount()
     {
-        StringBuilder outString = new StringBuilder();
+        // Cells may have been added since the last render, so the cursor starts over
+        cursor = null;
 
-        // Initialize the group to match the first cell
-        char currentChar = s.charAt(0);
-        int charCount = 0;
+        int count = 0;
+        for(Node temp = leftFrontier; temp != null; temp = temp.right)
+            ++count;
 
-        for(char c : s.toCharArray())
-        {
-            // The end of a group is found
-            if(c != currentChar)
-            {
-                // Output the group
-                if(charCount < 4)
-                    outString.append(("" + currentChar).repeat(charCount) + (charCount > 1 ? " " : ""));
-                else
-                {
-                    outString.append(("" + currentChar));
-                    outString.append("^" + charCount + " ");
-                }
-                
-                // Start the next group
-                currentChar = c;
-                charCount = 1;
-            }
-            else // Combine current symbol into the group
-                ++charCount;
-        }
+        return count;
+    }
 
-        // Output the final group
-        outString.append((char)currentChar);
-        if(charCount > 1)
-            outString.append("^" + charCount);
+    public int headCell()
+    {
+        cursor = null;
+
+        int index = 0;
+        for(Node temp = leftFrontier; temp != head; temp = temp.right)
+            ++index;
 
-        return outString.toString();
+        return index;
     }
 
-    public String toString()
+    public byte cellAt(int index)
     {
-        StringBuilder outString = new StringBuilder();
-        Node temp = leftFrontier;
-        
-        // Append each symbol
-        while(temp != null)
+        // The renderer reads nearby cells, so walk from the last cell that was read
+        if(cursor == null)
         {
-            if(temp == head)
-                outString.append('[');
+            cursor = leftFrontier;
+            cursorIndex = 0;
+        }
 
-            outString.append(Symbol.symbolToChar(temp.item));
+        for(; cursorIndex < index; ++cursorIndex)
+            cursor = cursor.right;
+        for(; cursorIndex > index; --cursorIndex)
+            cursor = cursor.left;
 
-            if(temp == head)
-                outString.append(']');
-            
-            temp = temp.right;
-        }
+        return cursor.item;
+    }
 
-        // Trim residual undefined cells from result
-        //   Only works if undefined states are whitespace
-        return outString.toString().trim();
+    public String toString()
+    {
+        return TapeRenderer.toString(this);
     }
 }
@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+public class TapeRenderer
+{
+    // Random access to the cells of a tape, so the renderer never needs a text copy of the tape
+    public interface Cells
+    {
+        int cellCount();
+
+        // Index of the head, or -1 when the head is not on the tape
+        int headCell();
+
+        byte cellAt(int index);
+    }
+
+    // Longest block that is checked for repeats
+    private static final int MAX_PERIOD = 8;
+
+    private Cells cells;
+    private Writer out;
+    private boolean written = false;
+    private boolean pendingSpace = false;
+
+    private TapeRenderer(Cells cells, Writer out)
+    {
+        this.cells = cells;
+        this.out = out;
+    }
+
+    public static void render(Cells cells, Writer out) throws IOException
+    {
+        TapeRenderer renderer = new TapeRenderer(cells, out);
+        int count = cells.cellCount();
+        int head = cells.headCell();
+
+        // Repeated blocks never cross the head, which is written as [x]
+        if(head < 0)
+            renderer.renderRange(0, count);
+        else
+        {
+            renderer.renderRange(0, head);
+            renderer.literal("[" + Symbol.symbolToChar(cells.cellAt(head)) + "]");
+            renderer.renderRange(head + 1, count);
+        }
+    }
+
+    public static String toString(Cells cells)
+    {
+        StringWriter out = new StringWriter();
+
+        try
+        {
+            render(cells, out);
+        }
+        catch(IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        return out.toString();
+    }
+
+    private void literal(String s) throws IOException
+    {
+        if(pendingSpace)
+            out.write(' ');
+
+        out.write(s);
+        written = true;
+        pendingSpace = false;
+    }
+
+    private void literal(char c) throws IOException
+    {
+        if(pendingSpace)
+            out.write(' ');
+
+        out.write(c);
+        written = true;
+        pendingSpace = false;
+    }
+
+    private void repeat(int start, int period, int repeats) throws IOException
+    {
+        // Repeats are separated from their neighbours, eg. 11 (10)^5000 1^20 [0]
+        if(written)
+            out.write(' ');
+
+        if(period > 1)
+            out.write('(');
+
+        for(int i = start; i < start + period; ++i)
+            out.write(Symbol.symbolToChar(cells.cellAt(i)));
+
+        if(period > 1)
+            out.write(')');
+
+        out.write("^" + repeats);
+        written = true;
+        pendingSpace = true;
+    }
+
+    private void renderRange(int start, int end) throws IOException
+    {
+        int i = start;
+
+        while(i < end)
+        {
+            // Find the block starting here that covers the most cells when repeated
+            int bestPeriod = 0;
+            int bestRepeats = 0;
+
+            for(int period = 1; period <= MAX_PERIOD && i + 2 * period <= end; ++period)
+            {
+                int length = period;
+                while(i + length < end && cells.cellAt(i + length) == cells.cellAt(i + length - period))
+                    ++length;
+
+                // Single symbols need 4 repeats to match the old grouping, blocks need 3
+                int repeats = length / period;
+                if(repeats >= (period == 1 ? 4 : 3) && repeats * period > bestRepeats * bestPeriod)
+                {
+                    bestPeriod = period;
+                    bestRepeats = repeats;
+                }
+            }
+
+            if(bestPeriod > 0)
+            {
+                repeat(i, bestPeriod, bestRepeats);
+                i += bestPeriod * bestRepeats;
+            }
+            else
+            {
+                literal(Symbol.symbolToChar(cells.cellAt(i)));
+                ++i;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+public class TraceReader
+{
+    public String beaver;
+    public long sampleInterval;
+
+    // Records read from the trace
+    public int count = 0;
+    public long[] steps = new long[1024];
+    public long[] heads = new long[1024];
+    public int[] states = new int[1024];
+    public byte[] symbols = new byte[1024];
+
+    TraceReader(String fileName, int maxRecords) throws IOException
+    {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(IO.dataPath + fileName)))))
+        {
+            if(in.readInt() != Tracer.MAGIC)
+                throw new IOException(fileName + " is not a trace file.");
+            if(in.readInt() != Tracer.VERSION)
+                throw new IOException(fileName + " was written by an unsupported trace version.");
+
+            beaver = in.readUTF();
+            sampleInterval = in.readLong();
+
+            long step = 0;
+            long head = 0;
+
+            while(count < maxRecords)
+            {
+                try
+                {
+                    step += readVarLong(in);
+                }
+                catch(EOFException e)
+                {
+                    break;
+                }
+
+                head += readVarLong(in);
+
+                if(count == steps.length)
+                {
+                    steps = Arrays.copyOf(steps, count * 2);
+                    heads = Arrays.copyOf(heads, count * 2);
+                    states = Arrays.copyOf(states, count * 2);
+                    symbols = Arrays.copyOf(symbols, count * 2);
+                }
+
+                steps[count] = step;
+                heads[count] = head;
+                states[count] = in.readByte();
+                symbols[count] = in.readByte();
+                ++count;
+            }
+        }
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException
+    {
+        long value = 0;
+        int shift = 0;
+        int b;
+
+        do
+        {
+            b = in.readUnsignedByte();
+            value |= (long)(b & 0x7F) << shift;
+            shift += 7;
+        }
+        while((b & 0x80) != 0);
+
+        // Undo the zigzag encoding
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public void render(Writer out, int maxWidth) throws IOException
+    {
+        if(count == 0)
+            return;
+
+        // Rebuild the tape from the symbols written at each recorded step
+        Beaver b = new Beaver(beaver);
+        long minHead = Long.MAX_VALUE;
+        long maxHead = Long.MIN_VALUE;
+        for(int i = 0; i < count; ++i)
+        {
+            minHead = Math.min(minHead, heads[i]);
+            maxHead = Math.max(maxHead, heads[i]);
+        }
+
+        // Wide traces are clipped to a window around the starting cell
+        long left = Math.max(minHead, Math.min(-maxWidth / 2, maxHead - maxWidth + 1));
+        int width = (int)Math.min(maxHead - left + 1, maxWidth);
+        byte[] tape = new byte[width];
+        char[] row = new char[width];
+
+        // Cells that no sampled step has written are left blank
+        Arrays.fill(tape, Symbol.UNDEFINED);
+
+        for(int i = 0; i < count; ++i)
+        {
+            for(int cell = 0; cell < width; ++cell)
+                row[cell] = tape[cell] == Symbol.UNDEFINED ? ' ' : Symbol.symbolToChar(tape[cell]);
+
+            // The head is shown as the letter of its state
+            int headCell = (int)(heads[i] - left);
+            if(headCell >= 0 && headCell < width)
+            {
+                row[headCell] = State.stateToChar(states[i]);
+                tape[headCell] = State.packedSymbol(b.transitions[states[i] * b.symbolCount + symbols[i]]);
+            }
+
+            out.write(String.format("%10d ", steps[i]));
+            out.write(row);
+            out.write(System.lineSeparator());
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        String traceFile;
+        int maxRows = 1000;
+        int maxWidth = 160;
+
+        // Get command line arguments
+        try
+        {
+            traceFile = args[0];
+
+            if(args.length > 1)
+                maxRows = Integer.parseInt(args[1]);
+
+            if(args.length > 2)
+                maxWidth = Integer.parseInt(args[2]);
+        }
+        catch(Exception e)
+        {
+            System.out.println("Invalid arguments. Use the following command:");
+            System.out.println("java TraceReader <Trace file> [<Max rows> [<Max width>]]");
+            System.out.println("Example: java TraceReader trace.bin 200 80");
+            return;
+        }
+
+        Beaver.logging = false;
+        TraceReader reader = new TraceReader(traceFile, maxRows);
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        out.write(reader.beaver + ", sampled every " + reader.sampleInterval + " steps" + System.lineSeparator());
+        reader.render(out, maxWidth);
+        out.flush();
+    }
+}
@@ -0,0 +1,222 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+public class Tracer
+{
+    // File layout: magic, version, TM, sample interval, then one record per sampled step
+    public static final int MAGIC = 0x42425452;
+    public static final int VERSION = 1;
+
+    public long sampleInterval;
+
+    // Preallocated ring buffer of records, filled by the run and drained by the writer thread
+    private int mask;
+    private long[] steps;
+    private long[] heads;
+    private int[] states;
+    private byte[] symbols;
+
+    // Positions in the ring, each only written by one thread
+    private long recorded = 0;
+    private long drainedCache = 0;
+    private AtomicLong published = new AtomicLong();
+    private AtomicLong drained = new AtomicLong();
+    private volatile boolean closing = false;
+
+    private DataOutputStream out;
+    private Thread writer;
+    private IOException writeError = null;
+
+    Tracer(String fileName, String beaver, long sampleInterval, int capacity) throws IOException
+    {
+        // The capacity is rounded up to a power of two so positions can be masked
+        capacity = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        mask = capacity - 1;
+        steps = new long[capacity];
+        heads = new long[capacity];
+        states = new int[capacity];
+        symbols = new byte[capacity];
+        this.sampleInterval = Math.max(sampleInterval, 1);
+
+        // Fast compression keeps the writer thread ahead of the run
+        out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(IO.dataPath + fileName), 1 << 16)
+        {
+            {
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        }, 1 << 16));
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(beaver);
+        out.writeLong(this.sampleInterval);
+
+        writer = new Thread(this::drain, "Tracer writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void record(long step, long head, int state, byte symbol)
+    {
+        // Only wait for the writer when the ring is full
+        if(recorded - drainedCache > mask)
+        {
+            while(recorded - (drainedCache = drained.get()) > mask)
+                Thread.onSpinWait();
+        }
+
+        int i = (int)recorded & mask;
+        steps[i] = step;
+        heads[i] = head;
+        states[i] = state;
+        symbols[i] = symbol;
+
+        // Lazy publishing avoids a full memory fence on every record
+        published.lazySet(++recorded);
+    }
+
+    private static int putVarLong(byte[] buffer, int length, long value)
+    {
+        // Zigzag encoding keeps small negative values short
+        value = (value << 1) ^ (value >> 63);
+
+        while((value & ~0x7FL) != 0)
+        {
+            buffer[length++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        buffer[length++] = (byte)value;
+        return length;
+    }
+
+    private void drain()
+    {
+        long read = 0;
+        long lastStep = 0;
+        long lastHead = 0;
+
+        // Records are encoded into a local buffer and written in blocks
+        byte[] buffer = new byte[1 << 16];
+        int length = 0;
+
+        try
+        {
+            while(true)
+            {
+                boolean finished = closing;
+                long available = published.get();
+
+                // Steps and heads are stored as deltas, which are nearly constant and compress well
+                for(; read < available; ++read)
+                {
+                    int i = (int)read & mask;
+                    length = putVarLong(buffer, length, steps[i] - lastStep);
+                    length = putVarLong(buffer, length, heads[i] - lastHead);
+                    buffer[length++] = (byte)states[i];
+                    buffer[length++] = symbols[i];
+                    lastStep = steps[i];
+                    lastHead = heads[i];
+
+                    // A record is at most 22 bytes
+                    if(length > buffer.length - 32)
+                    {
+                        out.write(buffer, 0, length);
+                        length = 0;
+                    }
+                }
+
+                out.write(buffer, 0, length);
+                length = 0;
+
+                drained.lazySet(read);
+
+                if(finished && read == published.get())
+                    break;
+                else if(read == available)
+                    Thread.sleep(1);
+            }
+        }
+        catch(IOException e)
+        {
+            writeError = e;
+
+            // Keep the run from waiting on a writer that has stopped
+            drained.set(Long.MAX_VALUE / 2);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void close() throws IOException
+    {
+        closing = true;
+
+        try
+        {
+            writer.join();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        out.close();
+
+        if(writeError != null)
+            throw writeError;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        String beaver;
+        String traceFile;
+        BigInteger maxSteps;
+        long sampleInterval = 1;
+        String engine = null;
+
+        // Get command line arguments
+        try
+        {
+            beaver = args[0];
+            traceFile = args[1];
+            maxSteps = new BigInteger(args[2]);
+
+            if(args.length > 3)
+                sampleInterval = Long.parseLong(args[3]);
+
+            if(args.length > 4)
+                engine = args[4];
+        }
+        catch(Exception e)
+        {
+            System.out.println("Invalid arguments. Use the following command:");
+            System.out.println("java Tracer <TM> <Trace file> <Max steps> [<Sample interval> [<Engine>]]");
+            System.out.println("Example: java Tracer 1RB1LB_1LA1RZ trace.bin 1000");
+            return;
+        }
+
+        Beaver b = new Beaver(beaver);
+        if(engine != null)
+            b.setEngine(engine);
+
+        // Refuse the run before the trace file is created, as other engines would leave only a header
+        if(!Beaver.canTrace(b.engine))
+        {
+            System.out.println("The " + engine + " engine cannot be traced. Use the node, array, or bits engine.");
+            return;
+        }
+
+        b.tracer = new Tracer(traceFile, b.beaverString, sampleInterval, 1 << 16);
+        b.run(maxSteps);
+        b.tracer.close();
+    }
+}
@@ -0,0 +1,233 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class TransitionLog implements AutoCloseable
+{
+    // File layout: magic, version, TM, subtape length, then one record per transition
+    public static final int MAGIC = 0x42425354;
+    public static final int VERSION = 2;
+
+    // Version 1 logs are the same, except they never hold an overflowed step count
+    private static final int FIRST_VERSION = 1;
+
+    // Step counts are never negative, so this marks a count too large for a long, followed by its length and bytes as a BigInteger
+    private static final long OVERFLOWED_STEPS = -1;
+
+    // Result id of a transition that halted inside the subtape
+    public static final int HALTED = -1;
+
+    private DataOutputStream out;
+    public long count = 0;
+
+    TransitionLog(Path path, String beaver, int subtapeLength) throws IOException
+    {
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(beaver);
+        out.writeInt(subtapeLength);
+    }
+
+    public void write(int source, int state, int result, int nextState, long steps) throws IOException
+    {
+        // Subtapes are written as their ids in the search, so every record is 18 bytes unless its step count overflowed
+        out.writeInt(source);
+        out.writeInt(result);
+        out.writeByte(state);
+        out.writeByte(nextState);
+        out.writeLong(steps);
+        ++count;
+    }
+
+    public void write(int source, int state, int result, int nextState, StepCounter steps) throws IOException
+    {
+        if(steps.isLong())
+        {
+            write(source, state, result, nextState, steps.longValue());
+            return;
+        }
+
+        byte[] bytes = steps.bigIntegerValue().toByteArray();
+        write(source, state, result, nextState, OVERFLOWED_STEPS);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        out.close();
+    }
+
+    // Streams a log back one record at a time, reusing its fields for every record
+    public static class Reader implements AutoCloseable
+    {
+        private DataInputStream in;
+        public String beaver;
+        public int subtapeLength;
+
+        public int source;
+        public int result;
+        public int state;
+        public int nextState;
+
+        // Counts too large for a long are saturated in steps, and kept in full in bigSteps, which is null otherwise
+        public long steps;
+        public BigInteger bigSteps;
+
+        Reader(Path path) throws IOException
+        {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+
+            if(in.readInt() != MAGIC)
+                throw new IOException(path + " is not a transition log.");
+            int version = in.readInt();
+            if(version < FIRST_VERSION || version > VERSION)
+                throw new IOException(path + " was written by an unsupported transition log version.");
+
+            beaver = in.readUTF();
+            subtapeLength = in.readInt();
+        }
+
+        public boolean next() throws IOException
+        {
+            try
+            {
+                source = in.readInt();
+            }
+            catch(EOFException e)
+            {
+                return false;
+            }
+
+            result = in.readInt();
+            state = in.readByte();
+            nextState = in.readByte();
+            steps = in.readLong();
+            bigSteps = null;
+
+            if(steps == OVERFLOWED_STEPS)
+            {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                bigSteps = new BigInteger(bytes);
+                steps = Long.MAX_VALUE;
+            }
+
+            return true;
+        }
+
+        public StepCounter stepCounter()
+        {
+            return bigSteps != null ? new StepCounter(bigSteps) : new StepCounter(steps);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+
+    // Looks up the subtape behind an id, so a log can be rendered without keeping the subtapes as objects
+    public interface Subtapes
+    {
+        // The cells are only valid until the next call
+        TapeRenderer.Cells cells(int id);
+
+        boolean headDirection(int id);
+    }
+
+    public static long writeText(Path log, Writer w, Subtapes subtapes) throws IOException
+    {
+        long lines = 0;
+
+        try(Reader reader = new Reader(log))
+        {
+            // For each transition, generate a line with <source tape> <steps taken> <result tape>
+            while(reader.next())
+            {
+                if(subtapes.headDirection(reader.source) == Tape.LEFT)
+                {
+                    w.write(State.stateToChar(reader.state) + ">");
+                    TapeRenderer.render(subtapes.cells(reader.source), w);
+                }
+                else
+                {
+                    TapeRenderer.render(subtapes.cells(reader.source), w);
+                    w.write("<" + State.stateToChar(reader.state));
+                }
+
+                w.write(" " + (reader.bigSteps != null ? reader.bigSteps : reader.steps) + " ");
+
+                if(reader.result == HALTED)
+                    w.write("HALT");
+                else if(subtapes.headDirection(reader.result) == Tape.LEFT)
+                {
+                    w.write("<" + State.stateToChar(reader.nextState));
+                    TapeRenderer.render(subtapes.cells(reader.result), w);
+                }
+                else
+                {
+                    TapeRenderer.render(subtapes.cells(reader.result), w);
+                    w.write(State.stateToChar(reader.nextState) + ">");
+                }
+
+                w.write(System.lineSeparator());
+                ++lines;
+            }
+        }
+
+        return lines;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        String logFile;
+        String textFile;
+
+        try
+        {
+            logFile = args[0];
+            textFile = args.length > 1 ? args[1] : logFile.replaceFirst("\\.bin$", "") + ".txt";
+        }
+        catch(Exception e)
+        {
+            System.out.println("Invalid arguments. Use the following command:");
+            System.out.println("java TransitionLog <Log file> [<Text file>]");
+            System.out.println("Example: java TransitionLog 1RB1LB_1LA1RZ_transitions5.bin");
+            return;
+        }
+
+        Path log = Paths.get(IO.dataPath + logFile);
+        String beaver;
+        int subtapeLength;
+        try(Reader reader = new Reader(log))
+        {
+            beaver = reader.beaver;
+            subtapeLength = reader.subtapeLength;
+        }
+
+        // Ids are positions in the search order, which never changes, so enumerating again without a log recovers every subtape
+        Beaver.logging = false;
+        EnumerateSubtapes es = new EnumerateSubtapes(new Beaver(beaver), subtapeLength);
+
+        long lines;
+        try(Writer w = Files.newBufferedWriter(Paths.get(IO.dataPath + textFile)))
+        {
+            lines = writeText(log, w, es.subtapeLookup());
+        }
+
+        es.close();
+        System.out.println("Wrote " + lines + " transitions of " + beaver + " to " + textFile);
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TranslatedCycler
+{
+    // Snapshot of the cells behind the head when it defines a new cell at the edge of the tape
+    private static class Record
+    {
+        boolean side;
+        long steps;
+        long position;
+
+        // Furthest the head has moved back from the edge since this record, as a position
+        long extreme;
+        byte[] cells;
+    }
+
+    public int recordsPerKey;
+    public int window;
+
+    // Records grouped by state and side, with the oldest records dropped first
+    private Map<Integer, ArrayDeque<Record>> records = new HashMap<>();
+    private long leftExtreme;
+    private long rightExtreme;
+
+    // Results
+    public long cycleStart = -1;
+    public long cyclePeriod = -1;
+    public long cycleShift = 0;
+
+    TranslatedCycler(int recordsPerKey, int window)
+    {
+        this.recordsPerKey = recordsPerKey;
+        this.window = window;
+        leftExtreme = rightExtreme = 0;
+    }
+
+    public void track(long position)
+    {
+        // Track how far the head retreats from each edge between records
+        if(position > leftExtreme)
+            leftExtreme = position;
+        if(position < rightExtreme)
+            rightExtreme = position;
+    }
+
+    public boolean record(CyclerTape tape, int state, long steps, boolean side)
+    {
+        long extreme = side == Tape.LEFT ? leftExtreme : rightExtreme;
+
+        // Fold the retreat since the last record on this side into the older records
+        for(ArrayDeque<Record> deque : records.values())
+            for(Record r : deque)
+                if(r.side == side)
+                    r.extreme = side == Tape.LEFT ? Math.max(r.extreme, extreme) : Math.min(r.extreme, extreme);
+
+        Record current = new Record();
+        current.side = side;
+        current.steps = steps;
+        current.position = tape.position;
+        current.extreme = tape.position;
+        current.cells = new byte[window];
+        tape.copyEdge(side, current.cells);
+
+        if(side == Tape.LEFT)
+            leftExtreme = tape.position;
+        else
+            rightExtreme = tape.position;
+
+        ArrayDeque<Record> deque = records.computeIfAbsent(state * 2 + (side == Tape.LEFT ? 1 : 0), k -> new ArrayDeque<>());
+
+        for(Record r : deque)
+        {
+            // Between the records the head never read further back than this distance from the old edge
+            int distance = (int)Math.abs(r.position - r.extreme);
+            if(distance >= window)
+                continue;
+
+            // Matching cells within that distance means the run repeats, shifted along the tape
+            if(Arrays.equals(r.cells, 0, distance + 1, current.cells, 0, distance + 1))
+            {
+                cycleStart = r.steps;
+                cyclePeriod = steps - r.steps;
+                cycleShift = current.position - r.position;
+                return true;
+            }
+        }
+
+        deque.addLast(current);
+        if(deque.size() > recordsPerKey)
+            deque.removeFirst();
+
+        return false;
+    }
+}
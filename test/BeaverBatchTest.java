@@ -0,0 +1,67 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class BeaverBatchTest
+{
+    // Malformed lines in the list, each of which must become an invalid row instead of failing the batch
+    private static final String[] INVALID = {
+        "1RB1L",
+        "1RB1LB_1LA1R",
+        "1RB2LB_1LA1RZ",
+        "1RB1LC_1LA1RZ",
+        "_"
+    };
+
+    private static final String VALID = "1RB1LB_1LA1RZ";
+
+    private static int failures = 0;
+
+    private static void check(boolean passed, String message)
+    {
+        if(!passed)
+        {
+            System.out.println("FAIL " + message);
+            ++failures;
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        // The batch reads and writes in the data folder, so point it at a temporary one
+        Path directory = Files.createTempDirectory("beaverbatchtest");
+        IO.dataPath = directory.toString() + "/";
+
+        StringBuilder list = new StringBuilder(VALID + System.lineSeparator());
+        for(String beaver : INVALID)
+            list.append(beaver + System.lineSeparator());
+        list.append(VALID + System.lineSeparator());
+        Files.writeString(directory.resolve("list.txt"), list);
+
+        for(String engine : new String[] { "default", "array", "lockstep" })
+        {
+            BeaverBatch.main(new String[] { "list.txt", "out.csv", "1000", engine, "2" });
+
+            List<String> lines = Files.readAllLines(directory.resolve("out.csv"));
+            check(lines.size() == INVALID.length + 3, engine + ": expected " + (INVALID.length + 3) + " lines, got " + lines.size());
+            if(lines.size() != INVALID.length + 3)
+                continue;
+
+            // Rows stay in list order, with the valid TM still run on either side of the bad lines
+            check(lines.get(1).startsWith(VALID + ", halted, 6, 4, 4"), engine + ": first row was " + lines.get(1));
+            check(lines.get(lines.size() - 1).startsWith(VALID + ", halted, 6, 4, 4"), engine + ": last row was " + lines.get(lines.size() - 1));
+
+            for(int i = 0; i < INVALID.length; ++i)
+                check(lines.get(i + 2).startsWith(INVALID[i] + ", invalid: "), engine + ": row for " + INVALID[i] + " was " + lines.get(i + 2));
+        }
+
+        for(String file : new String[] { "list.txt", "out.csv" })
+            Files.deleteIfExists(directory.resolve(file));
+        Files.delete(directory);
+
+        System.out.println(failures == 0 ? "BeaverBatchTest passed." : "BeaverBatchTest failed " + failures + " checks.");
+        if(failures != 0)
+            System.exit(1);
+    }
+}
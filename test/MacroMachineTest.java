@@ -0,0 +1,49 @@
+import java.math.BigInteger;
+
+public class MacroMachineTest
+{
+    // TMs whose halting transition moves the head out of a block, so the block it moves into must still be counted
+    private static final String[] BOUNDARY_HALTS = {
+        "1LC0RB_0RC1RZ_1RA1RB",
+        "1LZ1RZ_1LB1LB_0RB1LZ",
+        "0LZ0LA_0RD1RB_1LD1RA_0RD0LC",
+        "1LZ0LC_1RD0RC_0LB1RC_0LC0RD",
+        "2LZ0RZ2LB_2RB1RB0LZ",
+        "1LZ2RZ0RA_1LZ0RZ0LB",
+        "1RB1LB_1LA1RZ",
+        "1RB2LA1RA1RA_1LB1LA3RB1RZ"
+    };
+
+    public static void main(String[] args)
+    {
+        Beaver.logging = false;
+        BigInteger maxSteps = BigInteger.valueOf(100000);
+        int failures = 0;
+
+        for(String tm : BOUNDARY_HALTS)
+        {
+            Beaver node = new Beaver(tm);
+            node.setEngine("node");
+            Beaver.RunResult expected = node.run(maxSteps);
+
+            for(int blockSize = 1; blockSize <= 5; ++blockSize)
+            {
+                Beaver macro = new Beaver(tm);
+                macro.setEngine("macro" + blockSize);
+                Beaver.RunResult actual = macro.run(maxSteps);
+
+                if(actual.halted() != expected.halted() || !actual.steps().equals(expected.steps())
+                    || actual.sigma() != expected.sigma() || actual.definedCount() != expected.definedCount())
+                {
+                    System.out.println("FAIL " + tm + " macro" + blockSize + ": expected " + expected.steps() + " steps, " + expected.sigma() + " nonzero and " + expected.definedCount()
+                        + " defined cells, got " + actual.steps() + " steps, " + actual.sigma() + " nonzero and " + actual.definedCount() + " defined cells.");
+                    ++failures;
+                }
+            }
+        }
+
+        System.out.println(failures == 0 ? "MacroMachineTest passed." : "MacroMachineTest failed " + failures + " checks.");
+        if(failures != 0)
+            System.exit(1);
+    }
+}